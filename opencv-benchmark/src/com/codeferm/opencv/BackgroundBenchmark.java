@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of each {@link BackgroundModel} over pre-decoded traffic.mp4 frames.
+ * One operation is one frame. apply measures the model alone on pre-blurred
+ * frames and detectBoxes the complete MotionDetector using the model. Run
+ * BackgroundCompare for how closely each model agrees with the running
+ * average.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BackgroundBenchmark {
+    /**
+     * Background model name (see {@link MotionDetector#createModel(String)}).
+     */
+    @Param({"average", "integer", "mog2", "knn" })
+    public String background;
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Blurred frames.
+     */
+    private final List<Mat> blurred = new ArrayList<Mat>();
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Model measured alone.
+     */
+    private BackgroundModel model;
+    /**
+     * Detector using its own instance of the model.
+     */
+    private MotionDetector motionDetector;
+    /**
+     * Foreground mask.
+     */
+    private final Mat foreground = new Mat();
+
+    /**
+     * Decode and blur frames and create models.
+     */
+    @Setup
+    public void setup() {
+        frames = Frames.load(Frames.TRAFFIC, Frames.COUNT);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final Size kSize = new Size(8, 8);
+        // CHECKSTYLE:ON MagicNumber
+        for (Mat frame : frames) {
+            final Mat mat = new Mat();
+            Imgproc.blur(frame, mat, kSize);
+            blurred.add(mat);
+        }
+        model = MotionDetector.createModel(background);
+        motionDetector = new MotionDetector(frames.get(0).size(), 0,
+                MotionDetector.createModel(background));
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+        Frames.release(blurred);
+        model.release();
+        motionDetector.release();
+        foreground.release();
+    }
+
+    /**
+     * Next frame index.
+     *
+     * @return Index.
+     */
+    private int next() {
+        final int i = index;
+        index = (index + 1) % frames.size();
+        return i;
+    }
+
+    /**
+     * BackgroundModel.apply and countNonZero.
+     *
+     * @return Foreground pixel count.
+     */
+    @Benchmark
+    public int apply() {
+        model.apply(blurred.get(next()), foreground);
+        return Core.countNonZero(foreground);
+    }
+
+    /**
+     * Complete MotionDetector.detect into box buffer.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int detectBoxes() {
+        return motionDetector.detectBoxes(frames.get(next()));
+    }
+}
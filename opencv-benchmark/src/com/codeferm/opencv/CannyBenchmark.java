@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Canny chain over pre-decoded traffic.mp4 frames. One operation is one frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CannyBenchmark {
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Grayscale image.
+     */
+    private final Mat gray = new Mat();
+    /**
+     * Blurred image.
+     */
+    private final Mat blur = new Mat();
+    /**
+     * Edges.
+     */
+    private final Mat edges = new Mat();
+    /**
+     * Colored edges.
+     */
+    private final Mat dst = new Mat();
+    /**
+     * Blur kernel size.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final Size kSize = new Size(3, 3);
+    // CHECKSTYLE:ON MagicNumber
+
+    /**
+     * Decode frames.
+     */
+    @Setup
+    public void setup() {
+        frames = Frames.load(Frames.TRAFFIC, Frames.COUNT);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+        gray.release();
+        blur.release();
+        edges.release();
+        dst.release();
+    }
+
+    /**
+     * Same chain as Canny.main.
+     *
+     * @return Colored edges.
+     */
+    @Benchmark
+    public Mat canny() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
+        Imgproc.GaussianBlur(gray, blur, kSize, 0);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        Imgproc.Canny(blur, edges, 100, 200, 3, false);
+        // CHECKSTYLE:ON MagicNumber
+        dst.release();
+        Core.bitwise_and(mat, mat, dst, edges);
+        return dst;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * CaptureUI Mat to BufferedImage conversion over pre-decoded traffic.mp4
+ * frames. One operation is one frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConvertBenchmark {
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Reused image.
+     */
+    private BufferedImage image;
+
+    /**
+     * Decode frames.
+     */
+    @Setup
+    public void setup() {
+        frames = Frames.load(Frames.TRAFFIC, Frames.COUNT);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+    }
+
+    /**
+     * Conversion into a new image every frame.
+     *
+     * @return Converted image.
+     */
+    @Benchmark
+    public BufferedImage convert() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        return CaptureUI.toBufferedImage(mat);
+    }
+
+    /**
+     * Same conversion as CaptureUI.convert, reusing the image.
+     *
+     * @return Converted image.
+     */
+    @Benchmark
+    public BufferedImage convertReuse() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        image = CaptureUI.toBufferedImage(mat, image);
+        return image;
+    }
+}
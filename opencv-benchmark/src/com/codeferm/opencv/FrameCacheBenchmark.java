@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Canny and grayscale motion analyzing the same pre-decoded traffic.mp4
+ * frames. One operation is one frame for both analyzers. separate lets each
+ * analyzer convert the frame itself and shared takes the grayscale frame from
+ * one {@link FrameCache}, so the difference is the cost of the duplicated
+ * conversion.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameCacheBenchmark {
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Edge detector for separate.
+     */
+    private EdgeDetector separateEdges;
+    /**
+     * Motion detector for separate.
+     */
+    private MotionDetector separateMotion;
+    /**
+     * Edge detector for shared.
+     */
+    private EdgeDetector sharedEdges;
+    /**
+     * Motion detector for shared.
+     */
+    private MotionDetector sharedMotion;
+    /**
+     * Cache for shared.
+     */
+    private final FrameCache cache = new FrameCache();
+
+    /**
+     * Decode frames and create analyzers.
+     */
+    @Setup
+    public void setup() {
+        frames = Frames.load(Frames.TRAFFIC, Frames.COUNT);
+        separateEdges = new EdgeDetector();
+        separateMotion = new MotionDetector(frames.get(0).size());
+        separateMotion.setGrayscale(true);
+        sharedEdges = new EdgeDetector();
+        sharedMotion = new MotionDetector(frames.get(0).size());
+        sharedMotion.setGrayscale(true);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+        separateEdges.release();
+        separateMotion.release();
+        sharedEdges.release();
+        sharedMotion.release();
+        cache.release();
+    }
+
+    /**
+     * Each analyzer converts the frame.
+     *
+     * @return Number of motion boxes.
+     */
+    @Benchmark
+    public int separate() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        separateEdges.detect(mat);
+        return separateMotion.detectBoxes(mat);
+    }
+
+    /**
+     * Analyzers share derived images.
+     *
+     * @return Number of motion boxes.
+     */
+    @Benchmark
+    public int shared() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        cache.reset(mat);
+        sharedEdges.detect(cache);
+        return sharedMotion.detectBoxes(cache);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Pre-decoded frames, so benchmarks measure processing without decode. Any
+ * {@link FrameIO} source works, including {@link #SYNTHETIC} frames that are
+ * generated in memory and do not depend on the codecs installed.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class Frames {
+    /**
+     * Traffic video.
+     */
+    public static final String TRAFFIC = "../resources/traffic.mp4";
+    /**
+     * Walking video.
+     */
+    public static final String WALKING = "../resources/walking.mp4";
+    /**
+     * Generated 480x360 frames with moving boxes.
+     */
+    public static final String SYNTHETIC = FrameIO.SYNTHETIC + "480x360:100";
+    /**
+     * Frames decoded per benchmark.
+     */
+    public static final int COUNT = 100;
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private Frames() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Decode frames from start of file.
+     *
+     * @param url
+     *            Source (see {@link FrameIO}).
+     * @param count
+     *            Maximum frames to decode.
+     * @return Decoded frames.
+     */
+    public static List<Mat> load(final String url, final int count) {
+        final FrameSource source = FrameIO.source(url);
+        final List<Mat> frames = new ArrayList<Mat>(count);
+        Mat mat = new Mat();
+        while (frames.size() < count && source.read(mat)) {
+            frames.add(mat);
+            mat = new Mat();
+        }
+        mat.release();
+        mat.delete();
+        source.release();
+        if (frames.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                    "No frames decoded from %s", url));
+        }
+        return frames;
+    }
+
+    /**
+     * Free native memory.
+     *
+     * @param frames
+     *            Frames to release.
+     */
+    public static void release(final List<Mat> frames) {
+        for (Mat mat : frames) {
+            mat.release();
+            mat.delete();
+        }
+        frames.clear();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * HOG detectMultiScale over pre-decoded walking.mp4 frames at several strides
+ * and scales, compared with {@link PyramidHogDetector} limited to a person
+ * height band. One operation is one frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HogBenchmark {
+    /**
+     * Smallest person height for band detector.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final double MIN_HEIGHT = 128;
+    /**
+     * Largest person height for band detector.
+     */
+    private static final double MAX_HEIGHT = 320;
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Window stride in pixels.
+     */
+    @Param({"4", "8", "16" })
+    public int stride;
+    /**
+     * Pyramid scale.
+     */
+    @Param({"1.05", "1.1", "1.2" })
+    public double scale;
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Detector.
+     */
+    private HogDetector hogDetector;
+    /**
+     * Band limited detector.
+     */
+    private PyramidHogDetector pyramidHogDetector;
+    /**
+     * Locations.
+     */
+    private final MatOfRect foundLocations = new MatOfRect();
+    /**
+     * Weights.
+     */
+    private final MatOfDouble foundWeights = new MatOfDouble();
+
+    /**
+     * Decode frames and create detector.
+     */
+    @Setup
+    public void setup() {
+        frames = Frames.load(Frames.WALKING, Frames.COUNT);
+        hogDetector = new HogDetector(new Size(stride, stride),
+                HogDetector.PADDING, scale);
+        pyramidHogDetector = new PyramidHogDetector(new Size(stride, stride),
+                HogDetector.PADDING, scale, MIN_HEIGHT, MAX_HEIGHT);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+        hogDetector.release();
+        pyramidHogDetector.release();
+        foundLocations.release();
+        foundWeights.release();
+    }
+
+    /**
+     * Single detectMultiScale call.
+     *
+     * @return Locations.
+     */
+    @Benchmark
+    public MatOfRect detectMultiScale() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        hogDetector.detect(mat, foundLocations, foundWeights);
+        return foundLocations;
+    }
+
+    /**
+     * Only pyramid levels for the person height band.
+     *
+     * @return Locations.
+     */
+    @Benchmark
+    public MatOfRect detectBand() {
+        final Mat mat = frames.get(index);
+        index = (index + 1) % frames.size();
+        pyramidHogDetector.detect(mat, foundLocations, foundWeights);
+        return foundLocations;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * MotionDetect per-frame kernels over pre-decoded traffic.mp4 frames. One
+ * operation is one frame. detectBoxes is the analytics only path and
+ * detectDrawEncode adds the drawing and DIVX encoding that -Danalytics=true
+ * skips. detectBoxesGrid is detectBoxes with the -Dgrid=4 motion estimate.
+ * The morphology benchmarks compare each {@link Morphology} on the same masks.
+ * contoursBoxes uses the default findContours boxes and contoursComponents
+ * the opt-in connected components boxes.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionBenchmark {
+    /**
+     * Decoded frames.
+     */
+    private List<Mat> frames;
+    /**
+     * Thresholded motion masks, one per frame.
+     */
+    private final List<Mat> masks = new ArrayList<Mat>();
+    /**
+     * Next frame.
+     */
+    private int index;
+    /**
+     * Detector for contours and full detect.
+     */
+    private MotionDetector motionDetector;
+    /**
+     * Detector using grid motion estimate.
+     */
+    private MotionDetector gridDetector;
+    /**
+     * Detector using connected components for boxes.
+     */
+    private MotionDetector componentsDetector;
+    /**
+     * Iterated 3x3 kernel morphology.
+     */
+    private Morphology iterated;
+    /**
+     * Distance transform morphology.
+     */
+    private Morphology distance;
+    /**
+     * Bit-packed morphology.
+     */
+    private Morphology packed;
+    /**
+     * Mask copy, since contours works in place.
+     */
+    private final Mat mask = new Mat();
+    /**
+     * Box buffer for allocation-free contours.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final int[] boxes = new int[MotionDetector.BOX_INTS * 256];
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Work image.
+     */
+    private final Mat workImg = new Mat();
+    /**
+     * Moving average image.
+     */
+    private final Mat movingAvgImg = new Mat();
+    /**
+     * Scaled moving average image.
+     */
+    private final Mat scaleImg = new Mat();
+    /**
+     * Difference image.
+     */
+    private final Mat diffImg = new Mat();
+    /**
+     * Grayscale difference.
+     */
+    private final Mat gray = new Mat();
+    /**
+     * Blur kernel size.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final Size kSize = new Size(8, 8);
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Frame drawn on and encoded, so decoded frames stay unchanged.
+     */
+    private final Mat annotated = new Mat();
+    /**
+     * Encoder output.
+     */
+    private File videoFile;
+    /**
+     * Encoder.
+     */
+    private VideoSink videoSink;
+
+    /**
+     * Decode frames and build masks with the same chain MotionDetector uses.
+     *
+     * @throws IOException
+     *             If encoder output file cannot be created.
+     */
+    @Setup
+    public void setup() throws IOException {
+        frames = Frames.load(Frames.TRAFFIC, Frames.COUNT);
+        motionDetector = new MotionDetector(frames.get(0).size());
+        gridDetector = new MotionDetector(frames.get(0).size());
+        componentsDetector = new MotionDetector(frames.get(0).size());
+        componentsDetector.setConnectedComponents(true);
+        iterated = MotionDetector.createMorphology("iterated",
+                MotionDetector.DILATE_ITERATIONS,
+                MotionDetector.ERODE_ITERATIONS);
+        distance = MotionDetector.createMorphology("distance",
+                MotionDetector.DILATE_ITERATIONS,
+                MotionDetector.ERODE_ITERATIONS);
+        packed = MotionDetector.createMorphology("packed",
+                MotionDetector.DILATE_ITERATIONS,
+                MotionDetector.ERODE_ITERATIONS);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        gridDetector.setGridStep(4);
+        // CHECKSTYLE:ON MagicNumber
+        videoFile = File.createTempFile("motion-benchmark", ".avi");
+        videoSink = new VideoSink(videoFile.getPath(), new FourCC("DIVX"),
+                FrameIO.DEFAULT_FPS, frames.get(0).size());
+        for (Mat frame : frames) {
+            chain(frame);
+            masks.add(gray.clone());
+        }
+    }
+
+    /**
+     * Free native memory.
+     */
+    @TearDown
+    public void tearDown() {
+        Frames.release(frames);
+        Frames.release(masks);
+        motionDetector.release();
+        gridDetector.release();
+        componentsDetector.release();
+        iterated.release();
+        distance.release();
+        packed.release();
+        mask.release();
+        workImg.release();
+        movingAvgImg.release();
+        scaleImg.release();
+        diffImg.release();
+        gray.release();
+        annotated.release();
+        videoSink.release();
+        if (!videoFile.delete()) {
+            videoFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Blur, accumulateWeighted, absdiff and threshold chain from
+     * MotionDetector with RunningAverageModel.
+     *
+     * @param frame
+     *            Frame.
+     * @return Changed pixel count.
+     */
+    private int chain(final Mat frame) {
+        Imgproc.blur(frame, workImg, kSize);
+        if (movingAvgImg.empty()) {
+            workImg.convertTo(movingAvgImg, CvType.CV_32F);
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        Imgproc.accumulateWeighted(workImg, movingAvgImg, .03);
+        Core.convertScaleAbs(movingAvgImg, scaleImg);
+        Core.absdiff(workImg, scaleImg, diffImg);
+        Imgproc.cvtColor(diffImg, gray, Imgproc.COLOR_BGR2GRAY);
+        Imgproc.threshold(gray, gray, 25, 255, Imgproc.THRESH_BINARY);
+        // CHECKSTYLE:ON MagicNumber
+        return Core.countNonZero(gray);
+    }
+
+    /**
+     * Next frame index.
+     *
+     * @return Index.
+     */
+    private int next() {
+        final int i = index;
+        index = (index + 1) % frames.size();
+        return i;
+    }
+
+    /**
+     * Moving average chain.
+     *
+     * @return Changed pixel count.
+     */
+    @Benchmark
+    public int motionChain() {
+        return chain(frames.get(next()));
+    }
+
+    /**
+     * Iterated 3x3 kernel dilate and erode including mask copy.
+     *
+     * @return Mask.
+     */
+    @Benchmark
+    public Mat morphologyIterated() {
+        masks.get(next()).copyTo(mask);
+        iterated.apply(mask);
+        return mask;
+    }
+
+    /**
+     * Distance transform dilate and erode including mask copy.
+     *
+     * @return Mask.
+     */
+    @Benchmark
+    public Mat morphologyDistance() {
+        masks.get(next()).copyTo(mask);
+        distance.apply(mask);
+        return mask;
+    }
+
+    /**
+     * Bit-packed dilate and erode including mask copy.
+     *
+     * @return Mask.
+     */
+    @Benchmark
+    public Mat morphologyPacked() {
+        masks.get(next()).copyTo(mask);
+        packed.apply(mask);
+        return mask;
+    }
+
+    /**
+     * MotionDetector.contours including mask copy.
+     *
+     * @return Rectangles.
+     */
+    @Benchmark
+    public List<Rect> contours() {
+        masks.get(next()).copyTo(mask);
+        return motionDetector.contours(mask);
+    }
+
+    /**
+     * MotionDetector.contours into box buffer including mask copy.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int contoursBoxes() {
+        masks.get(next()).copyTo(mask);
+        return motionDetector.contours(mask, boxes);
+    }
+
+    /**
+     * MotionDetector.contours into box buffer with connected components
+     * including mask copy.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int contoursComponents() {
+        masks.get(next()).copyTo(mask);
+        return componentsDetector.contours(mask, boxes);
+    }
+
+    /**
+     * Complete MotionDetector.detect.
+     *
+     * @return Rectangles.
+     */
+    @Benchmark
+    public List<Rect> detect() {
+        return motionDetector.detect(frames.get(next()));
+    }
+
+    /**
+     * Complete MotionDetector.detect into box buffer.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int detectBoxes() {
+        return motionDetector.detectBoxes(frames.get(next()));
+    }
+
+    /**
+     * Complete MotionDetector.detect into box buffer with grid estimate.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int detectBoxesGrid() {
+        return gridDetector.detectBoxes(frames.get(next()));
+    }
+
+    /**
+     * Complete MotionDetector.detect into box buffer, then draw and encode.
+     * Includes one frame copy.
+     *
+     * @return Box count.
+     */
+    @Benchmark
+    public int detectDrawEncode() {
+        frames.get(next()).copyTo(annotated);
+        final int count = motionDetector.detectBoxes(annotated);
+        motionDetector.draw(annotated, motionDetector.getBoxes(), count);
+        videoSink.write(annotated);
+        return count;
+    }
+}
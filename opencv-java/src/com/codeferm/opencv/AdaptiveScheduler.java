@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+
+/**
+ * Keeps people detection real time on live sources. Frames come from a
+ * {@link FrameGrabber}, so frames that arrive while the consumer is busy are
+ * dropped. Detection runs every Nth frame, where N is adjusted so the average
+ * cost per frame fits in the source frame interval. Frames in between reuse
+ * the last detections, or with tracking on, the confirmed tracks of a
+ * {@link Tracker} predicted forward to the current frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class AdaptiveScheduler {
+    /**
+     * Weight of newest sample in moving averages.
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Receives every processed frame.
+     */
+    interface Listener {
+        /**
+         * Frame is ready.
+         *
+         * @param mat
+         *            Frame.
+         * @param foundLocations
+         *            Detected, carried or tracked rectangles.
+         * @param foundWeights
+         *            Weight of each rectangle.
+         * @param detected
+         *            True if detection ran on this frame.
+         */
+        void frame(Mat mat, MatOfRect foundLocations,
+                MatOfDouble foundWeights, boolean detected);
+    }
+
+    /**
+     * Source of newest frames.
+     */
+    private final FrameGrabber frameGrabber;
+    /**
+     * Detector.
+     */
+    private final PeopleDetector peopleDetector;
+    /**
+     * Nanoseconds between source frames.
+     */
+    private final double frameNanos;
+    /**
+     * Largest detection interval.
+     */
+    private final int maxInterval;
+    /**
+     * Tracker or null to carry last detections unchanged.
+     */
+    private final Tracker tracker;
+    /**
+     * Detected or carried locations.
+     */
+    private final MatOfRect foundLocations = new MatOfRect();
+    /**
+     * Detected or carried weights.
+     */
+    private final MatOfDouble foundWeights = new MatOfDouble();
+    /**
+     * Sequence of last detection.
+     */
+    private long lastSequence;
+    /**
+     * Sequence of frame being processed.
+     */
+    private long sequence;
+    /**
+     * Average nanoseconds of a frame with detection.
+     */
+    private double detectNanos;
+    /**
+     * Average nanoseconds of a frame without detection.
+     */
+    private double carryNanos;
+    /**
+     * Current detection interval.
+     */
+    private int interval = 1;
+    /**
+     * Frames processed.
+     */
+    private int frames;
+    /**
+     * Frames with detection.
+     */
+    private int detections;
+    /**
+     * Total capture to result latency.
+     */
+    private long totalLatency;
+    /**
+     * Largest capture to result latency.
+     */
+    private long maxLatency;
+
+    /**
+     * Create scheduler.
+     *
+     * @param frameGrabber
+     *            Started frame grabber.
+     * @param peopleDetector
+     *            Detector.
+     * @param fps
+     *            Source frame rate.
+     * @param maxInterval
+     *            Largest detection interval.
+     * @param track
+     *            Track detections and predict them between detections.
+     */
+    AdaptiveScheduler(final FrameGrabber frameGrabber,
+            final PeopleDetector peopleDetector, final double fps,
+            final int maxInterval, final boolean track) {
+        this.frameGrabber = frameGrabber;
+        this.peopleDetector = peopleDetector;
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+        this.maxInterval = maxInterval;
+        if (track) {
+            // Tracks must survive the frames between detections
+            tracker = new Tracker(Tracker.IOU_THRESHOLD, Tracker.MAX_MISSES
+                    + maxInterval, Tracker.MIN_HITS);
+        } else {
+            tracker = null;
+        }
+    }
+
+    /**
+     * Smallest interval where average cost per frame fits in the frame
+     * interval: (detect + (n - 1) * carry) / n &lt;= frame.
+     */
+    private void adjustInterval() {
+        int newInterval = maxInterval;
+        if (detectNanos <= frameNanos) {
+            newInterval = 1;
+        } else if (carryNanos < frameNanos) {
+            newInterval = (int) Math.ceil((detectNanos - carryNanos)
+                    / (frameNanos - carryNanos));
+        }
+        interval = Math.max(1, Math.min(maxInterval, newInterval));
+    }
+
+    /**
+     * Replace locations and weights with confirmed tracks.
+     */
+    private void tracked() {
+        final List<Tracker.Track> tracks = tracker.getTracks();
+        final Rect[] rects = new Rect[tracks.size()];
+        final double[] weights = new double[rects.length];
+        for (int i = 0; i < rects.length; i++) {
+            rects[i] = tracks.get(i).getRect();
+            weights[i] = tracks.get(i).getWeight();
+        }
+        foundLocations.fromArray(rects);
+        foundWeights.fromArray(weights);
+    }
+
+    /**
+     * Process frames until grabber reaches end of stream.
+     *
+     * @param listener
+     *            Receives every processed frame.
+     * @throws InterruptedException
+     *             If interrupted while waiting for a frame.
+     */
+    public void run(final Listener listener) throws InterruptedException {
+        FrameGrabber.Frame frame = frameGrabber.next();
+        while (frame != null) {
+            final long startTime = System.nanoTime();
+            sequence = frame.getSequence();
+            final long elapsed = sequence - lastSequence;
+            // Always detect first frame, then detect when interval has passed
+            final boolean detect = frames == 0 || elapsed >= interval;
+            if (detect) {
+                peopleDetector.detect(frame.getMat(), foundLocations,
+                        foundWeights);
+                if (tracker != null) {
+                    tracker.update(frame.getSequence(), foundLocations
+                            .toArray(), foundWeights.toArray());
+                }
+                lastSequence = frame.getSequence();
+                detections++;
+            } else if (tracker != null) {
+                tracker.predict(frame.getSequence());
+            }
+            if (tracker != null) {
+                tracked();
+            }
+            listener.frame(frame.getMat(), foundLocations, foundWeights,
+                    detect);
+            final long endTime = System.nanoTime();
+            // Track cost of each kind of frame separately
+            if (detect) {
+                detectNanos += (endTime - startTime - detectNanos) * SMOOTHING;
+            } else {
+                carryNanos += (endTime - startTime - carryNanos) * SMOOTHING;
+            }
+            if (frames == 0) {
+                detectNanos = endTime - startTime;
+            }
+            adjustInterval();
+            final long latency = endTime - frame.getTime();
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            frames++;
+            frame = frameGrabber.next();
+        }
+    }
+
+    /**
+     * Tracker used when tracking is on.
+     *
+     * @return Tracker or null.
+     */
+    public Tracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Source sequence of frame being processed, which skips dropped frames.
+     *
+     * @return Frame number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Frames processed.
+     *
+     * @return Frame count.
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames where detection ran.
+     *
+     * @return Detection count.
+     */
+    public int getDetections() {
+        return detections;
+    }
+
+    /**
+     * Current detection interval.
+     *
+     * @return Detection runs every interval source frames.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Average capture to result latency.
+     *
+     * @return Milliseconds.
+     */
+    public double getAverageLatency() {
+        if (frames == 0) {
+            return 0.0;
+        }
+        return (double) TimeUnit.NANOSECONDS.toMicros(totalLatency / frames)
+                / TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    /**
+     * Largest capture to result latency.
+     *
+     * @return Milliseconds.
+     */
+    public double getMaxLatency() {
+        return (double) TimeUnit.NANOSECONDS.toMicros(maxLatency)
+                / TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    /**
+     * Free native memory.
+     */
+    public void release() {
+        foundLocations.release();
+        foundLocations.delete();
+        foundWeights.release();
+        foundWeights.delete();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Runs every {@link BackgroundModel} on the same blurred frames and logs cost
+ * and agreement with the running average, which is the model MotionDetect was
+ * tuned with. There is no ground truth for traffic.mp4, so agreement shows how
+ * far a cheaper model drifts from known good behavior:
+ *
+ * ms/frame is the time spent in apply. Trigger agreement is the percent of
+ * frames where both models are on the same side of the motion trigger. Mask
+ * IoU is foreground intersection over union averaged over frames where either
+ * mask has foreground.
+ *
+ * A second instance of each model runs the -Dgrid=n (default 4) estimate path
+ * of MotionDetector.setGridStep. Its cost, the frames it decided from the
+ * estimate alone and the frames where it reached a different trigger decision
+ * than the full count are logged too.
+ *
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" if no args passed.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class BackgroundCompare {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF This is not a constant, so naming convenetion is correct
+    private static final Logger logger = Logger.getLogger(BackgroundCompare.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Models compared. The first one is the reference.
+     */
+    private static final String[] MODELS = {"average", "integer", "mog2",
+            "knn" };
+    /**
+     * Default grid step.
+     */
+    private static final int GRID_STEP = 4;
+    /**
+     * Blur kernel size, same as MotionDetector at full resolution.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final Size K_SIZE = new Size(8, 8);
+    // CHECKSTYLE:ON MagicNumber
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private BackgroundCompare() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Trigger decision of the MotionDetector grid estimate path.
+     *
+     * @param model
+     *            Model used only for the grid path.
+     * @param workImg
+     *            Blurred frame.
+     * @param mask
+     *            Foreground mask work Mat.
+     * @param step
+     *            Grid step.
+     * @param totalPixels
+     *            Pixels per frame.
+     * @param nanos
+     *            Time per model, updated.
+     * @param estimated
+     *            Frames decided by estimate per model, updated.
+     * @param index
+     *            Model index.
+     * @return True if motion is above trigger.
+     */
+    private static boolean grid(final BackgroundModel model,
+            final Mat workImg, final Mat mask, final int step,
+            final double totalPixels, final long[] nanos,
+            final int[] estimated, final int index) {
+        final long start = System.nanoTime();
+        boolean motion = false;
+        if (model.estimate(workImg, step) < MotionDetector.TRIGGER_PERCENT
+                * MotionDetector.ESTIMATE_MARGIN) {
+            estimated[index]++;
+        } else {
+            model.foreground(workImg, mask);
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            final double percent = 100.0 * Core.countNonZero(mask)
+                    / totalPixels;
+            // CHECKSTYLE:ON MagicNumber
+            if (percent > MotionDetector.RESET_PERCENT) {
+                model.reset(workImg);
+            }
+            motion = percent > MotionDetector.TRIGGER_PERCENT;
+        }
+        nanos[index] += System.nanoTime() - start;
+        return motion;
+    }
+
+    /**
+     * Compare models.
+     *
+     * args[0] = source file or will default to "../resources/traffic.mp4" if no
+     * args passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String url = null;
+        // Check how many arguments were passed in
+        if (args.length == 0) {
+            url = "../resources/traffic.mp4";
+        } else {
+            url = args[0];
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    BackgroundCompare.class.getClassLoader()
+                            .getResourceAsStream("logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("Input file: %s", url));
+        final FrameSource source = FrameIO.source(url);
+        final Size frameSize = source.getFrameSize();
+        final double totalPixels = frameSize.width * frameSize.height;
+        final int step = Integer.getInteger("grid", GRID_STEP);
+        final BackgroundModel[] models = new BackgroundModel[MODELS.length];
+        final BackgroundModel[] gridModels =
+                new BackgroundModel[MODELS.length];
+        final Mat[] masks = new Mat[MODELS.length];
+        for (int i = 0; i < MODELS.length; i++) {
+            models[i] = MotionDetector.createModel(MODELS[i]);
+            gridModels[i] = MotionDetector.createModel(MODELS[i]);
+            masks[i] = new Mat();
+        }
+        final long[] gridNanos = new long[MODELS.length];
+        final int[] estimated = new int[MODELS.length];
+        final int[] mismatched = new int[MODELS.length];
+        final long[] nanos = new long[MODELS.length];
+        final int[] triggered = new int[MODELS.length];
+        final int[] agreed = new int[MODELS.length];
+        final double[] iouTotal = new double[MODELS.length];
+        final int[] iouFrames = new int[MODELS.length];
+        final Mat mat = new Mat();
+        final Mat workImg = new Mat();
+        final Mat overlap = new Mat();
+        final Mat gridMask = new Mat();
+        int frames = 0;
+        while (source.read(mat)) {
+            Imgproc.blur(mat, workImg, K_SIZE);
+            boolean reference = false;
+            for (int i = 0; i < MODELS.length; i++) {
+                final long start = System.nanoTime();
+                models[i].apply(workImg, masks[i]);
+                nanos[i] += System.nanoTime() - start;
+                // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+                final double percent = 100.0 * Core.countNonZero(masks[i])
+                        / totalPixels;
+                // CHECKSTYLE:ON MagicNumber
+                if (percent > MotionDetector.RESET_PERCENT) {
+                    models[i].reset(workImg);
+                }
+                final boolean motion = percent > MotionDetector.TRIGGER_PERCENT;
+                if (i == 0) {
+                    reference = motion;
+                }
+                if (motion) {
+                    triggered[i]++;
+                }
+                if (motion == reference) {
+                    agreed[i]++;
+                }
+                Core.bitwise_or(masks[0], masks[i], overlap);
+                final int union = Core.countNonZero(overlap);
+                if (union > 0) {
+                    Core.bitwise_and(masks[0], masks[i], overlap);
+                    iouTotal[i] += (double) Core.countNonZero(overlap) / union;
+                    iouFrames[i]++;
+                }
+                if (grid(gridModels[i], workImg, gridMask, step, totalPixels,
+                        gridNanos, estimated, i) != motion) {
+                    mismatched[i]++;
+                }
+            }
+            frames++;
+        }
+        for (int i = 0; i < MODELS.length; i++) {
+            double iou = 1.0;
+            if (iouFrames[i] > 0) {
+                iou = iouTotal[i] / iouFrames[i];
+            }
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            logger.log(Level.INFO, String.format(
+                    "%-8s %6.3f ms/frame, %d frames with motion, "
+                            + "%5.1f%% trigger agreement, %4.2f mask IoU",
+                    MODELS[i], (double) TimeUnit.NANOSECONDS
+                            .toMicros(nanos[i] / Math.max(1, frames))
+                            / TimeUnit.MILLISECONDS.toMicros(1), triggered[i],
+                    100.0 * agreed[i] / Math.max(1, frames), iou));
+            logger.log(Level.INFO, String.format(
+                    "%-8s %6.3f ms/frame with grid %d, %d frames estimated, "
+                            + "%d trigger mismatches", MODELS[i],
+                    (double) TimeUnit.NANOSECONDS.toMicros(gridNanos[i]
+                            / Math.max(1, frames))
+                            / TimeUnit.MILLISECONDS.toMicros(1), step,
+                    estimated[i], mismatched[i]));
+            // CHECKSTYLE:ON MagicNumber
+        }
+        // Free native memory
+        for (int i = 0; i < MODELS.length; i++) {
+            models[i].release();
+            gridModels[i].release();
+            masks[i].release();
+            masks[i].delete();
+        }
+        mat.release();
+        mat.delete();
+        workImg.release();
+        workImg.delete();
+        overlap.release();
+        overlap.delete();
+        gridMask.release();
+        gridMask.delete();
+        source.release();
+    }
+}
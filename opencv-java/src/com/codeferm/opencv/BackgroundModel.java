@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Background model used by {@link MotionDetector}. Each frame updates the
+ * model and produces a foreground mask where changed pixels are 255 and
+ * background is 0, so models are interchangeable and motion percent means the
+ * same thing for all of them.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface BackgroundModel {
+    /**
+     * Update model with frame and write foreground mask.
+     *
+     * @param frame
+     *            Blurred BGR or grayscale frame. Not modified.
+     * @param foreground
+     *            Single channel mask, 255 for foreground and 0 for background.
+     */
+    void apply(Mat frame, Mat foreground);
+
+    /**
+     * Update model with frame and estimate foreground percent from a sparse
+     * grid of every step-th pixel in each direction, without building the full
+     * mask. Call {@link #foreground(Mat, Mat)} with the same frame to get the
+     * mask when the estimate is worth a full pass.
+     *
+     * @param frame
+     *            Blurred BGR or grayscale frame. Not modified.
+     * @param step
+     *            Grid step in pixels.
+     * @return Estimated foreground percent.
+     */
+    double estimate(Mat frame, int step);
+
+    /**
+     * Write foreground mask of frame last passed to
+     * {@link #estimate(Mat, int)} without updating the model again.
+     *
+     * @param frame
+     *            Same frame passed to estimate.
+     * @param foreground
+     *            Single channel mask, 255 for foreground and 0 for background.
+     */
+    void foreground(Mat frame, Mat foreground);
+
+    /**
+     * Called when most of the frame changed at once (camera adjusting). Models
+     * that only adapt slowly rebuild from frame, models that adapt on their own
+     * can ignore it.
+     *
+     * @param frame
+     *            Blurred BGR or grayscale frame.
+     */
+    void reset(Mat frame);
+
+    /**
+     * Release native memory held by model.
+     */
+    void release();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Processor that can take derived images such as grayscale or downscaled
+ * frames from a {@link FrameCache} shared with other processors of the same
+ * frame. {@link FanOut} calls {@link #process(Mat, FrameCache)} instead of
+ * {@link #process(Mat)} for these processors.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface CachedFrameProcessor extends FrameProcessor {
+    /**
+     * Process frame in place using derived images from cache. Cached images
+     * are read-only.
+     *
+     * @param mat
+     *            Frame to process. Same content as the cache's frame, but may
+     *            be a private copy.
+     * @param cache
+     *            Cache reset with the frame.
+     */
+    void process(Mat mat, FrameCache cache);
+}
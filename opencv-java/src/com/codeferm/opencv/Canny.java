@@ -13,17 +13,16 @@ import java.util.logging.Logger;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.VideoWriter;
-import org.opencv.videoio.Videoio;
 
 /**
- * Canny Edge Detector.
+ * Canny Edge Detector. Decode, {@link EdgeDetector} and encode run as a three
+ * stage {@link Pipeline}.
  *
- * args[0] = source file or will default to "../resources/traffic.mp4" if no
- * args passed.
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" if no args passed.
+ *
+ * -Danalytics=true finds edges without drawing or encoding them, except every
+ * -Dsample=n frames.
  *
  * @author sgoldsmith
  * @version 1.0.0
@@ -60,7 +59,8 @@ final class Canny {
      */
     public static void main(final String[] args) {
         String url = null;
-        final String outputFile = "../output/canny-java.avi";
+        final String outputFile = FrameIO
+                .outputFile("../output/canny-java.avi");
         // Check how many arguments were passed in
         if (args.length == 0) {
             // If no arguments were passed then default to
@@ -80,48 +80,60 @@ final class Canny {
         logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
         logger.log(Level.INFO, String.format("Input file: %s", url));
         logger.log(Level.INFO, String.format("Output file: %s", outputFile));
-        VideoCapture videoCapture = new VideoCapture(url);
-        final Size frameSize = new Size(
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
-        logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
-        final FourCC fourCC = new FourCC("DIVX");
-        VideoWriter videoWriter = new VideoWriter(outputFile, fourCC.toInt(),
-                videoCapture.get(Videoio.CAP_PROP_FPS), frameSize, true);
-        final Mat mat = new Mat();
-        int frames = 0;
-        final Mat gray = new Mat();
-        final Mat blur = new Mat();
-        final Mat edges = new Mat();
-        final Mat dst = new Mat();
-        final Size kSize = new Size(3, 3);
+        final FrameSource source = FrameIO.source(url);
+        logger.log(Level.INFO, String.format("Resolution: %s",
+                source.getFrameSize()));
+        final FrameSink sink = FrameIO.sink(outputFile, "DIVX", source);
+        final EdgeDetector edgeDetector = new EdgeDetector();
+        final Metrics metrics = new Metrics("Canny");
+        final FrameProcessor processor = new FrameProcessor() {
+            /**
+             * Frames processed.
+             */
+            private long frames;
+
+            @Override
+            public void process(final Mat mat) {
+                long time = System.nanoTime();
+                edgeDetector.detect(mat);
+                time = metrics.record(Metrics.Stage.PROCESS, time);
+                // Analytics mode only draws frames that will be encoded
+                if (FrameIO.isEncoded(frames++)) {
+                    edgeDetector.draw(mat);
+                    metrics.record(Metrics.Stage.DRAW, time);
+                }
+            }
+
+            @Override
+            public void release() {
+                edgeDetector.release();
+            }
+        };
+        final Pipeline pipeline = new Pipeline(source, sink, processor,
+                Pipeline.DEFAULT_POOL_SIZE, metrics);
+        metrics.start();
         final long startTime = System.currentTimeMillis();
-        while (videoCapture.read(mat)) {
-            // Convert the image to grayscale
-            Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
-            // Reduce noise with a kernel 3x3
-            Imgproc.GaussianBlur(gray, blur, kSize, 0);
-            // Canny detector
-            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
-            Imgproc.Canny(blur, edges, 100, 200, 3, false);
-            // CHECKSTYLE:ON MagicNumber
-            // Add some colors to edges from original image
-            Core.bitwise_and(mat, mat, dst, edges);
-            videoWriter.write(dst);
-            dst.release();
-            frames++;
+        int frames = 0;
+        try {
+            frames = pipeline.run();
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Pipeline interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Release native memory
+            pipeline.release();
+            processor.release();
+            source.release();
+            if (sink != null) {
+                sink.release();
+            }
         }
         final long estimatedTime = System.currentTimeMillis() - startTime;
+        metrics.stop();
         logger.log(Level.INFO, String.format("%d frames", frames));
         // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
         logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
                 (double) estimatedTime / 1000));
         // CHECKSTYLE:ON MagicNumber
-        // Release native memory
-        mat.release();
-        gray.release();
-        blur.release();
-        edges.release();
-        dst.release();
     }
 }
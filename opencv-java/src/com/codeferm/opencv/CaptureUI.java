@@ -7,12 +7,15 @@
 package com.codeferm.opencv;
 
 import java.applet.Applet;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -20,13 +23,18 @@ import java.util.logging.Logger;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
 
 /**
  * A simple video capture applet. The Java bindings do not have an imshow
  * equivalent (highgui wrapper) yet.
  *
+ * Frames are read by a {@link FrameGrabber} thread that only keeps the newest
+ * one, so a slow display skips frames instead of falling behind. The display
+ * thread takes the newest frame, converts it and asks for a repaint at most
+ * once per screen refresh, so the frame shown is never more than one frame
+ * old no matter how fast painting is. Both threads exit on {@link #stop()},
+ * which Esc and closing the window call.
+ *
  * args[0] = camera index, url or will default to "0" if no args passed.
  *
  * @author sgoldsmith
@@ -46,25 +54,42 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
             .getName());
     // CHECKSTYLE:ON ConstantName
     /**
-     * Mat for image capture.
+     * Refresh rate used when the screen does not report one.
+     */
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    /**
+     * Last frame taken by display thread.
+     */
+    private transient volatile Mat captureMat;
+    /**
+     * Reads frames and keeps the newest one.
      */
-    private transient Mat captureMat;
+    private transient FrameGrabber frameGrabber;
     /**
-     * Class for video capturing from video files or cameras.
+     * Source of frames.
      */
-    private transient VideoCapture videoCapture;
+    private transient FrameSource source;
     /**
      * Frame size.
      */
     private transient Size frameSize;
     /**
-     * Applet drawing canvas.
+     * Applet drawing canvas. Only touched while holding the applet lock.
      */
     private transient BufferedImage bufferedImage;
     /**
-     * Processing thread.
+     * Image being filled by capture thread. Swapped with bufferedImage once
+     * full, so painting never sees a partial frame.
+     */
+    private transient BufferedImage backImage;
+    /**
+     * Display thread.
      */
     private transient Thread captureThread;
+    /**
+     * Set false to stop display thread.
+     */
+    private transient volatile boolean running;
 
     /* Load the OpenCV system library */
     static {
@@ -72,19 +97,13 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
     }
 
     /**
-     * Initialize VideoCapture.
+     * Initialize source.
      *
      * @param url
-     *            Camera URL.
+     *            Source (see {@link FrameIO}).
      */
     public CaptureUI(final String url) {
-        // See if URL is an integer: -? = negative sign, could have none or one,
-        // \\d+ = one or more digits
-        if (url.matches("-?\\d+")) {
-            videoCapture = new VideoCapture(Integer.parseInt(url));
-        } else {
-            videoCapture = new VideoCapture(url);
-        }
+        source = FrameIO.source(url);
         // Custom logging properties via class loader
         try {
             LogManager.getLogManager().readConfiguration(
@@ -93,9 +112,7 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
         } catch (SecurityException | IOException e) {
             e.printStackTrace();
         }
-        frameSize = new Size(
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+        frameSize = source.getFrameSize();
         logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
         logger.log(Level.INFO, "Press [Esc] to exit");
         logger.log(Level.INFO, String.format("URL: %s", url));
@@ -103,21 +120,22 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
     }
 
     /**
-     * Return capture Mat.
+     * Return capture Mat. Only valid on the display thread, since the grabber
+     * reuses it once a newer frame is taken.
      *
-     * @return Current Mat image from capture.
+     * @return Last Mat image taken from capture or null.
      */
     public Mat getCaptureMat() {
         return captureMat;
     }
 
     /**
-     * VideoCapture accessor.
+     * Source accessor.
      *
-     * @return VideoCapture.
+     * @return Source of frames.
      */
-    public VideoCapture getCap() {
-        return videoCapture;
+    public FrameSource getSource() {
+        return source;
     }
 
     /**
@@ -135,75 +153,164 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
     @Override
     public void init() {
         logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
-        captureMat = new Mat();
     }
 
     /**
-     * Create frame acquisition thread and start.
+     * Start grabber and display threads. Files are paced to their frame rate
+     * like a live camera.
      */
     @Override
     public void start() {
         if (captureThread == null) {
-            captureThread = new Thread(this);
+            double paceFps = FrameIO.fps(source);
+            if (source.isLive()) {
+                paceFps = 0;
+            }
+            frameGrabber = new FrameGrabber(source, paceFps);
+            frameGrabber.start();
+            running = true;
+            captureThread = new Thread(this, "display");
             captureThread.start();
         }
     }
 
     /**
-     * Stop frame acquisition thread.
+     * Stop display and grabber threads, wait for them to exit and free native
+     * memory. Safe to call more than once, but the source is released, so
+     * capture cannot be started again. Not synchronized, since the display
+     * thread needs the applet lock to swap images before it can exit.
      */
     @Override
     public void stop() {
         if (captureThread != null) {
+            running = false;
+            // Wake display thread if it is waiting for a frame
+            captureThread.interrupt();
             try {
                 captureThread.join();
+                frameGrabber.stop();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                logger.log(Level.WARNING, "Interrupted while stopping", e);
+                Thread.currentThread().interrupt();
             }
+            logger.log(Level.INFO, String.format(
+                    "Frames dropped by display: %d", frameGrabber
+                            .getDropped()));
+            captureMat = null;
+            // Release native memory
+            frameGrabber.release();
+            frameGrabber = null;
             captureThread = null;
+            source.release();
+        }
+    }
+
+    /**
+     * Screen refresh period.
+     *
+     * @return Nanoseconds between screen refreshes.
+     */
+    private static long refreshNanos() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        if (!GraphicsEnvironment.isHeadless()) {
+            refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDisplayMode()
+                    .getRefreshRate();
         }
-        // Release native memory
-        if (captureMat != null) {
-            captureMat.release();
+        if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            refreshRate = DEFAULT_REFRESH_RATE;
         }
+        return TimeUnit.SECONDS.toNanos(1) / refreshRate;
     }
 
     /**
-     * Read frame, convert from Mat to byte array, repaint canvas with new
-     * frame.
+     * Take newest frame, convert from Mat to byte array and repaint canvas
+     * with new frame, at most once per screen refresh. Frames read while
+     * waiting for the next refresh are dropped by the grabber.
      */
     @Override
     public void run() {
-        while (true) {
-            if (videoCapture.read(captureMat)) {
+        final long period = refreshNanos();
+        long next = System.nanoTime();
+        try {
+            FrameGrabber.Frame frame = frameGrabber.next();
+            while (running && frame != null) {
+                captureMat = frame.getMat();
                 /*
                  * Add image processing code here.
                  */
                 convert(captureMat);
                 repaint();
-            } else {
-                break;
+                // Wait for next refresh, so repaints are coalesced
+                next += period;
+                final long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } else {
+                    next = System.nanoTime();
+                }
+                frame = frameGrabber.next();
             }
+        } catch (InterruptedException e) {
+            logger.log(Level.FINE, "Display interrupted");
         }
     }
 
     /**
-     * Convert from Mat to BufferedImage.
+     * Convert from Mat to BufferedImage. Pixels are copied once into the back
+     * image, which is then swapped with the image being painted. Images are
+     * only allocated when the frame size or type changes.
      *
      * @param mat
      *            Mat array.
      */
     public void convert(final Mat mat) {
-        byte[] sourcePixels = new byte[mat.width() * mat.height()
-                * mat.channels()];
-        mat.get(0, 0, sourcePixels);
-        // Create new image and get reference to backing data
-        bufferedImage = new BufferedImage(mat.width(), mat.height(),
-                BufferedImage.TYPE_3BYTE_BGR);
-        byte[] targetPixels = ((DataBufferByte) bufferedImage.getRaster()
+        final BufferedImage image = toBufferedImage(mat, backImage);
+        synchronized (this) {
+            backImage = bufferedImage;
+            bufferedImage = image;
+        }
+    }
+
+    /**
+     * Convert from Mat to new BufferedImage.
+     *
+     * @param mat
+     *            Mat array.
+     * @return BufferedImage with copy of Mat pixels.
+     */
+    public static BufferedImage toBufferedImage(final Mat mat) {
+        return toBufferedImage(mat, null);
+    }
+
+    /**
+     * Convert from Mat to BufferedImage reusing image if it matches. Pixels
+     * are copied straight into the image backing array.
+     *
+     * @param mat
+     *            8 bit BGR or grayscale Mat.
+     * @param image
+     *            Image to reuse or null.
+     * @return Reused or new BufferedImage with copy of Mat pixels.
+     */
+    public static BufferedImage toBufferedImage(final Mat mat,
+            final BufferedImage image) {
+        int type = BufferedImage.TYPE_3BYTE_BGR;
+        if (mat.channels() == 1) {
+            type = BufferedImage.TYPE_BYTE_GRAY;
+        }
+        BufferedImage target = image;
+        // Only allocate when size or type changes
+        if (target == null || target.getWidth() != mat.width()
+                || target.getHeight() != mat.height()
+                || target.getType() != type) {
+            target = new BufferedImage(mat.width(), mat.height(), type);
+        }
+        final byte[] targetPixels = ((DataBufferByte) target.getRaster()
                 .getDataBuffer()).getData();
-        // Fast copy
-        System.arraycopy(sourcePixels, 0, targetPixels, 0, sourcePixels.length);
+        // Single copy from native memory into backing data
+        mat.get(0, 0, targetPixels);
+        return target;
     }
 
     @Override
@@ -228,15 +335,17 @@ final class CaptureUI extends Applet implements Runnable { // NOPMD
         } else {
             url = args[0];
         }
-        CaptureUI window = new CaptureUI(url);
+        final CaptureUI window = new CaptureUI(url);
         // Deal with VideoCapture always returning True otherwise it will hang
         // on VideoCapture.read()
         if (window.frameSize.width > 0 && window.frameSize.height > 0) {
-            KeyEventFrame frame = new KeyEventFrame();
+            final KeyEventFrame frame = new KeyEventFrame();
+            // Esc closes the window too
             frame.addWindowListener(new WindowAdapter() {
                 @Override
                 public void windowClosing(final WindowEvent e) {
-                    System.exit(0);
+                    window.stop();
+                    frame.dispose();
                 }
             });
             frame.add(window);
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Folds all cross kernel iterations into one L1 distance transform per
+ * operation. n dilate iterations set every pixel within L1 distance n of
+ * foreground, and n erode iterations clear every pixel within L1 distance n of
+ * background. distanceTransform with DIST_L1 and a 3x3 mask is exact, costs two
+ * passes no matter how large n is and treats pixels outside the frame as far
+ * away, which matches OpenCV's default morphology border. Each operation is a
+ * distance transform and a threshold instead of n kernel passes.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class DistanceMorphology implements Morphology {
+    /**
+     * Owns all working Mats.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Inverted mask.
+     */
+    private final Mat inverted = pool.acquire();
+    /**
+     * L1 distance, saturated at 255.
+     */
+    private final Mat distance = pool.acquire();
+    /**
+     * Dilate iterations.
+     */
+    private final int dilateIterations;
+    /**
+     * Erode iterations.
+     */
+    private final int erodeIterations;
+
+    /**
+     * Create morphology.
+     *
+     * @param dilateIterations
+     *            Dilate iterations (at most 254).
+     * @param erodeIterations
+     *            Erode iterations (at most 254).
+     */
+    DistanceMorphology(final int dilateIterations, final int erodeIterations) {
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        if (dilateIterations > 254 || erodeIterations > 254) {
+            // CHECKSTYLE:ON MagicNumber
+            throw new IllegalArgumentException(
+                    "Iterations must fit 8 bit distance");
+        }
+        this.dilateIterations = dilateIterations;
+        this.erodeIterations = erodeIterations;
+    }
+
+    @Override
+    public void apply(final Mat mask) {
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        if (dilateIterations > 0) {
+            // Distance of every pixel to nearest foreground
+            Core.bitwise_not(mask, inverted);
+            Imgproc.distanceTransform(inverted, distance, Imgproc.DIST_L1,
+                    Imgproc.DIST_MASK_3, CvType.CV_8U);
+            Imgproc.threshold(distance, mask, dilateIterations, 255,
+                    Imgproc.THRESH_BINARY_INV);
+        }
+        if (erodeIterations > 0) {
+            // Distance of every pixel to nearest background
+            Imgproc.distanceTransform(mask, distance, Imgproc.DIST_L1,
+                    Imgproc.DIST_MASK_3, CvType.CV_8U);
+            Imgproc.threshold(distance, mask, erodeIterations, 255,
+                    Imgproc.THRESH_BINARY);
+        }
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        pool.close();
+    }
+}
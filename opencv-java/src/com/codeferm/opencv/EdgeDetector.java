@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Canny edge detector stage. Pixels that are not on an edge are set to black,
+ * so edges keep the colors of the original frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class EdgeDetector implements FrameProcessor {
+    /**
+     * Black.
+     */
+    private static final Scalar BLACK = Scalar.all(0);
+    /**
+     * Owns working Mats.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Grayscale image.
+     */
+    private final Mat gray = pool.acquire();
+    /**
+     * Blurred image.
+     */
+    private final Mat blur = pool.acquire();
+    /**
+     * Edge mask.
+     */
+    private final Mat edges = pool.acquire();
+    /**
+     * Inverted edge mask.
+     */
+    private final Mat notEdges = pool.acquire();
+    /**
+     * Blur kernel size.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final Size kSize = new Size(3, 3);
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Blurred grayscale image in a shared {@link FrameCache}.
+     */
+    private final FrameCache.Key blurKey = FrameCache.gaussian(FrameCache
+            .gray(FrameCache.FRAME), (int) kSize.width);
+
+    /**
+     * Find edges of frame. Frame is not modified.
+     *
+     * @param mat
+     *            Frame.
+     * @return Edge mask, valid until next call.
+     */
+    public Mat detect(final Mat mat) {
+        // Convert the image to grayscale
+        Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
+        // Reduce noise with a kernel 3x3
+        Imgproc.GaussianBlur(gray, blur, kSize, 0);
+        return edges(blur);
+    }
+
+    /**
+     * Find edges of frame using the grayscale and blurred images in a cache
+     * shared with other analyzers of the same frame, so they are only
+     * computed once per frame.
+     *
+     * @param cache
+     *            Cache reset with the frame.
+     * @return Edge mask, valid until next call.
+     */
+    public Mat detect(final FrameCache cache) {
+        return edges(cache.get(blurKey));
+    }
+
+    /**
+     * Run Canny on blurred grayscale image.
+     *
+     * @param source
+     *            Blurred grayscale image. Not modified.
+     * @return Edge mask, valid until next call.
+     */
+    private Mat edges(final Mat source) {
+        // Canny detector
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        Imgproc.Canny(source, edges, 100, 200, 3, false);
+        // CHECKSTYLE:ON MagicNumber
+        return edges;
+    }
+
+    /**
+     * Black out everything but edges found by last detect.
+     *
+     * @param mat
+     *            Frame detect was called with.
+     */
+    public void draw(final Mat mat) {
+        // Black out in place, so no output Mat is needed
+        Core.bitwise_not(edges, notEdges);
+        mat.setTo(BLACK, notEdges);
+    }
+
+    /**
+     * Keep only edge pixels of frame.
+     *
+     * @param mat
+     *            Frame.
+     */
+    @Override
+    public void process(final Mat mat) {
+        detect(mat);
+        draw(mat);
+    }
+
+    @Override
+    public void release() {
+        pool.close();
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 28, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Rect;
+
+/**
+ * Writes per-frame detection records as newline delimited JSON (NDJSON) on a
+ * background thread. The processing thread only copies the record into a
+ * bounded queue and never waits for disk. If the writer falls so far behind
+ * that the queue is full the record is dropped and counted instead.
+ *
+ * The writer drains the queue in batches, formats each batch into one
+ * reusable buffer and writes it with a single FileChannel write, so the
+ * record rate is not limited by one write call per record. Files rotate when
+ * they reach a size limit or age limit. Each record looks like:
+ *
+ * {"frame":12,"time":1427500000000,"motion":1.25,"rects":[[10,20,64,128]],
+ * "weights":[1.52],"ids":[3]}
+ *
+ * Fields that do not apply to the detector are left out.
+ *
+ * Files are numbered from the first index that does not exist yet, so a
+ * restart never overwrites results from an earlier run. If the writer fails,
+ * later records and {@link #close()} throw IllegalStateException with the
+ * cause instead of silently dropping records.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class EventSink implements Runnable {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger // NOPMD
+            .getLogger(EventSink.class.getName());
+    // CHECKSTYLE:ON ConstantName
+    /**
+     * Default queue capacity in records.
+     */
+    public static final int CAPACITY = 4096;
+    /**
+     * Most records formatted per write.
+     */
+    private static final int BATCH = 256;
+    /**
+     * Write buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Longest time records wait in the queue when the stream is idle.
+     */
+    private static final long POLL_MILLIS = 1000;
+
+    /**
+     * One queued record.
+     */
+    private static final class Event {
+        /**
+         * Frame number.
+         */
+        private final long frame;
+        /**
+         * Capture time in milliseconds since epoch.
+         */
+        private final long time;
+        /**
+         * Boxes as x, y, width, height.
+         */
+        private final int[] boxes;
+        /**
+         * Weight of each box or null.
+         */
+        private final double[] weights;
+        /**
+         * Track ID of each box or null.
+         */
+        private final int[] ids;
+        /**
+         * Motion percent or NaN.
+         */
+        private final double motion;
+
+        /**
+         * Create event.
+         *
+         * @param frame
+         *            Frame number.
+         * @param time
+         *            Capture time in milliseconds since epoch.
+         * @param boxes
+         *            Boxes as x, y, width, height.
+         * @param weights
+         *            Weight of each box or null.
+         * @param ids
+         *            Track ID of each box or null.
+         * @param motion
+         *            Motion percent or NaN.
+         */
+        Event(final long frame, final long time, final int[] boxes,
+                final double[] weights, final int[] ids, final double motion) {
+            this.frame = frame;
+            this.time = time;
+            this.boxes = boxes;
+            this.weights = weights;
+            this.ids = ids;
+            this.motion = motion;
+        }
+    }
+
+    /**
+     * File name format with one %d for file number.
+     */
+    private final String outputPattern;
+    /**
+     * Bytes after which file is rotated.
+     */
+    private final long maxBytes;
+    /**
+     * Milliseconds after which file is rotated.
+     */
+    private final long maxMillis;
+    /**
+     * Records waiting for the writer.
+     */
+    private final BlockingQueue<Event> queue;
+    /**
+     * Records taken from queue for one write.
+     */
+    private final List<Event> batch = new ArrayList<Event>(BATCH);
+    /**
+     * Formatted batch.
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * UTF-8 encoder.
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8
+            .newEncoder();
+    /**
+     * Encoded batch.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /**
+     * Records written.
+     */
+    private final AtomicLong written = new AtomicLong();
+    /**
+     * Records dropped because queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Exception that stopped the writer or null.
+     */
+    private volatile Exception failure;
+    /**
+     * Writer thread.
+     */
+    private Thread thread;
+    /**
+     * Set false to stop writer once queue is empty.
+     */
+    private volatile boolean running;
+    /**
+     * Current file.
+     */
+    private FileChannel channel;
+    /**
+     * Bytes in current file.
+     */
+    private long fileBytes;
+    /**
+     * Time current file was opened.
+     */
+    private long fileTime;
+    /**
+     * Next file number to try.
+     */
+    private int files;
+
+    /**
+     * Create sink with default queue capacity.
+     *
+     * @param outputPattern
+     *            File name format with one %d for file number.
+     * @param maxBytes
+     *            Bytes after which file is rotated.
+     * @param maxMillis
+     *            Milliseconds after which file is rotated.
+     */
+    EventSink(final String outputPattern, final long maxBytes,
+            final long maxMillis) {
+        this(outputPattern, maxBytes, maxMillis, CAPACITY);
+    }
+
+    /**
+     * Create sink.
+     *
+     * @param outputPattern
+     *            File name format with one %d for file number.
+     * @param maxBytes
+     *            Bytes after which file is rotated.
+     * @param maxMillis
+     *            Milliseconds after which file is rotated.
+     * @param capacity
+     *            Records queued before new records are dropped.
+     */
+    EventSink(final String outputPattern, final long maxBytes,
+            final long maxMillis, final int capacity) {
+        if (maxBytes <= 0 || maxMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "Rotation limits must be greater than zero");
+        }
+        this.outputPattern = outputPattern;
+        this.maxBytes = maxBytes;
+        this.maxMillis = maxMillis;
+        queue = new ArrayBlockingQueue<Event>(capacity);
+    }
+
+    /**
+     * Start writer thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "event-sink");
+        thread.start();
+    }
+
+    /**
+     * Fail if the writer has stopped with an error.
+     */
+    private void checkWriter() {
+        if (failure != null) {
+            throw new IllegalStateException("Event writer failed", failure);
+        }
+    }
+
+    /**
+     * Queue a record without waiting.
+     *
+     * @param event
+     *            Record.
+     * @return True if queued, false if dropped.
+     */
+    private boolean offer(final Event event) {
+        checkWriter();
+        if (queue.offer(event)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Queue a record of boxes from {@link MotionDetector#getBoxes()}.
+     *
+     * @param frame
+     *            Frame number.
+     * @param time
+     *            Capture time in milliseconds since epoch.
+     * @param boxes
+     *            Boxes as x, y, width, height.
+     * @param count
+     *            Number of boxes.
+     * @param motion
+     *            Motion percent.
+     * @return True if queued, false if dropped.
+     * @throws IllegalStateException
+     *             If the writer has failed.
+     */
+    public boolean record(final long frame, final long time,
+            final int[] boxes, final int count, final double motion) {
+        final int[] copy = new int[count * MotionDetector.BOX_INTS];
+        System.arraycopy(boxes, 0, copy, 0, copy.length);
+        return offer(new Event(frame, time, copy, null, null, motion));
+    }
+
+    /**
+     * Queue a record of rectangles.
+     *
+     * @param frame
+     *            Frame number.
+     * @param time
+     *            Capture time in milliseconds since epoch.
+     * @param rects
+     *            Rectangles.
+     * @param weights
+     *            Weight of each rectangle or null.
+     * @param ids
+     *            Track ID of each rectangle or null.
+     * @return True if queued, false if dropped.
+     * @throws IllegalStateException
+     *             If the writer has failed.
+     */
+    public boolean record(final long frame, final long time,
+            final Rect[] rects, final double[] weights, final int[] ids) {
+        final int[] boxes = new int[rects.length * MotionDetector.BOX_INTS];
+        for (int i = 0; i < rects.length; i++) {
+            final int j = i * MotionDetector.BOX_INTS;
+            boxes[j] = rects[i].x;
+            boxes[j + 1] = rects[i].y;
+            boxes[j + 2] = rects[i].width;
+            boxes[j + 3] = rects[i].height;
+        }
+        return offer(new Event(frame, time, boxes, weights, ids, Double.NaN));
+    }
+
+    /**
+     * Append one record as a JSON line.
+     *
+     * @param event
+     *            Record.
+     */
+    private void format(final Event event) {
+        text.append("{\"frame\":").append(event.frame).append(",\"time\":")
+                .append(event.time);
+        if (!Double.isNaN(event.motion)) {
+            text.append(",\"motion\":").append(event.motion);
+        }
+        text.append(",\"rects\":[");
+        for (int i = 0; i < event.boxes.length; i += MotionDetector.BOX_INTS) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append('[').append(event.boxes[i]).append(',')
+                    .append(event.boxes[i + 1]).append(',')
+                    .append(event.boxes[i + 2]).append(',')
+                    .append(event.boxes[i + 3]).append(']');
+        }
+        text.append(']');
+        if (event.weights != null) {
+            text.append(",\"weights\":[");
+            for (int i = 0; i < event.weights.length; i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(event.weights[i]);
+            }
+            text.append(']');
+        }
+        if (event.ids != null) {
+            text.append(",\"ids\":[");
+            for (int i = 0; i < event.ids.length; i++) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(event.ids[i]);
+            }
+            text.append(']');
+        }
+        text.append("}\n");
+    }
+
+    /**
+     * Close current file if it is too big or too old. The next write opens a
+     * new file, so idle streams do not create empty files.
+     *
+     * @throws IOException
+     *             If file cannot be closed.
+     */
+    private void rotate() throws IOException {
+        if (channel != null
+                && (fileBytes >= maxBytes || System.currentTimeMillis()
+                        - fileTime >= maxMillis)) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Open next unused file. Existing files are skipped, never truncated.
+     *
+     * @throws IOException
+     *             If file cannot be opened.
+     */
+    private void open() throws IOException {
+        Path path = Paths.get(String.format(outputPattern, files++));
+        while (Files.exists(path)) {
+            path = Paths.get(String.format(outputPattern, files++));
+        }
+        logger.log(Level.FINE, String.format("Event file %s", path));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        fileBytes = 0;
+        fileTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Write whatever is in the buffer.
+     *
+     * @throws IOException
+     *             If write fails.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encode and write formatted batch, draining the buffer each time it
+     * fills.
+     *
+     * @throws IOException
+     *             If write fails.
+     */
+    private void write() throws IOException {
+        rotate();
+        if (channel == null) {
+            open();
+        }
+        final CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, buffer, true);
+        while (result.isOverflow()) {
+            drain();
+            result = encoder.encode(chars, buffer, true);
+        }
+        encoder.flush(buffer);
+        drain();
+        text.setLength(0);
+    }
+
+    /**
+     * Write batches until stopped and queue is empty.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                final Event event = queue.poll(POLL_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    batch.add(event);
+                    queue.drainTo(batch, BATCH - 1);
+                    for (Event e : batch) {
+                        format(e);
+                    }
+                    write();
+                    written.addAndGet(batch.size());
+                    batch.clear();
+                } else {
+                    // Idle, but old files still need to be closed
+                    rotate();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Unable to write events", e);
+            failure = e;
+        } catch (InterruptedException e) {
+            logger.log(Level.FINE, "Event sink interrupted");
+        } finally {
+            running = false;
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to close event file", e);
+            }
+        }
+    }
+
+    /**
+     * Records written.
+     *
+     * @return Record count.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Records dropped because the writer fell behind.
+     *
+     * @return Record count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write queued records, close file and wait for writer to exit.
+     *
+     * @throws IllegalStateException
+     *             If the writer failed, so records were lost.
+     */
+    public void close() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        logger.log(Level.INFO, String.format(
+                "%d results written, %d dropped", written.get(),
+                dropped.get()));
+        checkWriter();
+    }
+}
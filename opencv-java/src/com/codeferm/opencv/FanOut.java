@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 1, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Decodes a source once and feeds every frame to several analyzers running in
+ * parallel. Decoding runs on the calling thread and each analyzer has its own
+ * thread and queue. Decoded frames come from a fixed pool and are shared by
+ * reference count: a frame goes back to the pool once every analyzer is done
+ * with it, so decode cost is paid once per frame no matter how many analyzers
+ * are added.
+ *
+ * Shared frames are read-only. An analyzer with a sink copies the frame into
+ * its own buffer first, so it can draw on it and write it to its own output,
+ * and gives the shared frame back right after the copy. An analyzer without a
+ * sink processes the shared frame directly and must not modify it, which is
+ * what processors do in analytics mode.
+ *
+ * Each shared frame has its own {@link FrameCache}, reset when the frame is
+ * decoded into. A {@link CachedFrameProcessor} gets that cache, so derived
+ * images several analyzers need, such as grayscale or a pyramid level, are
+ * computed once per frame by whichever analyzer asks first. Such an analyzer
+ * keeps the shared frame until it is done processing, not just until it is
+ * copied, so its cache stays valid.
+ *
+ * Like {@link Pipeline}, nothing is dropped: when the pool is empty the decoder
+ * waits, so the slowest analyzer sets the pace.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class FanOut {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(FanOut.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+
+    /**
+     * Decoded frame shared by all analyzers.
+     */
+    private static final class SharedFrame {
+        /**
+         * Frame buffer or null for end of stream marker.
+         */
+        private final Mat mat;
+        /**
+         * Analyzers still using the frame.
+         */
+        private final AtomicInteger references = new AtomicInteger();
+        /**
+         * Images derived from this frame.
+         */
+        private final FrameCache cache = new FrameCache();
+
+        /**
+         * Create shared frame.
+         *
+         * @param mat
+         *            Frame buffer or null for end of stream marker.
+         */
+        SharedFrame(final Mat mat) {
+            this.mat = mat;
+        }
+    }
+
+    /**
+     * One analyzer and its thread.
+     */
+    private final class Branch implements Runnable {
+        /**
+         * Analyzer name used for thread name and logging.
+         */
+        private final String name;
+        /**
+         * Analyzer.
+         */
+        private final FrameProcessor processor;
+        /**
+         * Processor as cached processor or null if it is not one.
+         */
+        private final CachedFrameProcessor cachedProcessor;
+        /**
+         * Destination of analyzed frames or null for none.
+         */
+        private final FrameSink sink;
+        /**
+         * Write stage timing.
+         */
+        private final Metrics metrics;
+        /**
+         * Frames waiting to be analyzed.
+         */
+        private final BlockingQueue<SharedFrame> queue;
+        /**
+         * Private copy drawn on and written when there is a sink.
+         */
+        private final Mat work;
+        /**
+         * Frames analyzed.
+         */
+        private int frames;
+
+        /**
+         * Create branch.
+         *
+         * @param name
+         *            Analyzer name.
+         * @param processor
+         *            Analyzer.
+         * @param sink
+         *            Destination of analyzed frames or null for none.
+         * @param metrics
+         *            Write stage timing.
+         */
+        Branch(final String name, final FrameProcessor processor,
+                final FrameSink sink, final Metrics metrics) {
+            this.name = name;
+            this.processor = processor;
+            if (processor instanceof CachedFrameProcessor) {
+                cachedProcessor = (CachedFrameProcessor) processor;
+            } else {
+                cachedProcessor = null;
+            }
+            this.sink = sink;
+            this.metrics = metrics;
+            // Room for every buffer plus end of stream marker
+            queue = new ArrayBlockingQueue<SharedFrame>(poolSize + 1);
+            if (sink == null) {
+                work = null;
+            } else {
+                work = pool.acquire();
+            }
+        }
+
+        /**
+         * Analyze frames until end of stream. If the analyzer fails, the rest
+         * of the frames are still given back, so other analyzers keep going.
+         */
+        @Override
+        public void run() {
+            try {
+                SharedFrame frame = queue.take();
+                while (frame != endOfStream) {
+                    analyze(frame);
+                    frame = queue.take();
+                }
+            } catch (InterruptedException e) {
+                logger.log(Level.WARNING, String.format("%s interrupted",
+                        name));
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, String.format("%s failed", name), e);
+                try {
+                    SharedFrame frame = queue.take();
+                    while (frame != endOfStream) {
+                        giveBack(frame);
+                        frame = queue.take();
+                    }
+                } catch (InterruptedException ie) {
+                    logger.log(Level.WARNING, String.format(
+                            "%s interrupted", name));
+                }
+            }
+        }
+
+        /**
+         * Analyze one frame. The shared frame is always given back, even if
+         * the analyzer fails.
+         *
+         * @param frame
+         *            Shared frame.
+         */
+        private void analyze(final SharedFrame frame) {
+            if (sink == null) {
+                try {
+                    process(frame.mat, frame);
+                } finally {
+                    giveBack(frame);
+                }
+            } else if (cachedProcessor != null) {
+                try {
+                    frame.mat.copyTo(work);
+                    process(work, frame);
+                } finally {
+                    giveBack(frame);
+                }
+                final long time = System.nanoTime();
+                sink.write(work);
+                metrics.record(Metrics.Stage.WRITE, time);
+            } else {
+                try {
+                    frame.mat.copyTo(work);
+                } finally {
+                    giveBack(frame);
+                }
+                processor.process(work);
+                final long time = System.nanoTime();
+                sink.write(work);
+                metrics.record(Metrics.Stage.WRITE, time);
+            }
+            frames++;
+        }
+
+        /**
+         * Run processor, passing the frame's cache if it takes one.
+         *
+         * @param mat
+         *            Shared frame or private copy.
+         * @param frame
+         *            Shared frame.
+         */
+        private void process(final Mat mat, final SharedFrame frame) {
+            if (cachedProcessor == null) {
+                processor.process(mat);
+            } else {
+                cachedProcessor.process(mat, frame.cache);
+            }
+        }
+    }
+
+    /**
+     * Default number of shared frame buffers.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+    /**
+     * Source of frames.
+     */
+    private final FrameSource source;
+    /**
+     * Read stage timing.
+     */
+    private final Metrics metrics;
+    /**
+     * Number of shared frame buffers.
+     */
+    private final int poolSize;
+    /**
+     * Owns frame buffers and analyzer copies.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Marks end of stream. Never read into.
+     */
+    private final SharedFrame endOfStream = new SharedFrame(null);
+    /**
+     * Frames ready to be decoded into.
+     */
+    private final BlockingQueue<SharedFrame> freeQueue;
+    /**
+     * Every shared frame, for cache counts and release.
+     */
+    private final List<SharedFrame> sharedFrames =
+            new ArrayList<SharedFrame>();
+    /**
+     * Analyzers in the order they were added.
+     */
+    private final List<Branch> branches = new ArrayList<Branch>();
+
+    /**
+     * Create fan-out and pre-allocate frame buffers.
+     *
+     * @param source
+     *            Source of frames.
+     * @param poolSize
+     *            Number of shared frame buffers.
+     * @param metrics
+     *            Read stage timing.
+     */
+    FanOut(final FrameSource source, final int poolSize,
+            final Metrics metrics) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException(
+                    "Pool size must be greater than zero");
+        }
+        this.source = source;
+        this.poolSize = poolSize;
+        this.metrics = metrics;
+        freeQueue = new ArrayBlockingQueue<SharedFrame>(poolSize);
+        final Size frameSize = source.getFrameSize();
+        for (int i = 0; i < poolSize; i++) {
+            final SharedFrame frame = new SharedFrame(pool.acquire(
+                    (int) frameSize.height, (int) frameSize.width,
+                    CvType.CV_8UC3));
+            sharedFrames.add(frame);
+            freeQueue.add(frame);
+        }
+    }
+
+    /**
+     * Add analyzer. All analyzers must be added before {@link #run()}.
+     *
+     * @param name
+     *            Analyzer name used for thread name and logging.
+     * @param processor
+     *            Analyzer. Must not modify the frame if sink is null.
+     * @param sink
+     *            Destination of analyzed frames or null for none.
+     * @param branchMetrics
+     *            Write stage timing for this analyzer.
+     */
+    public void add(final String name, final FrameProcessor processor,
+            final FrameSink sink, final Metrics branchMetrics) {
+        branches.add(new Branch(name, processor, sink, branchMetrics));
+    }
+
+    /**
+     * Last analyzer done with frame puts it back in the pool.
+     *
+     * @param frame
+     *            Shared frame.
+     */
+    private void giveBack(final SharedFrame frame) {
+        if (frame != endOfStream && frame.references.decrementAndGet() == 0) {
+            // Capacity is the pool size, so this never blocks
+            freeQueue.offer(frame);
+        }
+    }
+
+    /**
+     * Decode on the calling thread and analyze in parallel until source is
+     * exhausted.
+     *
+     * @return Number of frames decoded.
+     * @throws InterruptedException
+     *             If interrupted while waiting for a free frame.
+     */
+    public int run() throws InterruptedException {
+        if (branches.isEmpty()) {
+            throw new IllegalStateException("No analyzers added");
+        }
+        final List<Thread> threads = new ArrayList<Thread>(branches.size());
+        for (Branch branch : branches) {
+            final Thread thread = new Thread(branch, branch.name);
+            thread.start();
+            threads.add(thread);
+        }
+        int frames = 0;
+        try {
+            SharedFrame frame = freeQueue.take();
+            long time = System.nanoTime();
+            while (source.read(frame.mat)) {
+                metrics.record(Metrics.Stage.READ, time);
+                frame.cache.reset(frame.mat);
+                frame.references.set(branches.size());
+                for (Branch branch : branches) {
+                    // Only poolSize frames exist, so this never blocks
+                    branch.queue.put(frame);
+                }
+                frames++;
+                frame = freeQueue.take();
+                time = System.nanoTime();
+            }
+            freeQueue.offer(frame);
+        } finally {
+            for (Branch branch : branches) {
+                branch.queue.offer(endOfStream);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Frames analyzed by each analyzer, in the order they were added.
+     *
+     * @return Frame counts.
+     */
+    public int[] getFrames() {
+        final int[] frames = new int[branches.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = branches.get(i).frames;
+        }
+        return frames;
+    }
+
+    /**
+     * Derived images computed by all frame caches.
+     *
+     * @return Count.
+     */
+    public long getCacheComputed() {
+        long computed = 0;
+        for (SharedFrame frame : sharedFrames) {
+            computed += frame.cache.getComputed();
+        }
+        return computed;
+    }
+
+    /**
+     * Derived images requested from all frame caches.
+     *
+     * @return Count.
+     */
+    public long getCacheRequests() {
+        long requests = 0;
+        for (SharedFrame frame : sharedFrames) {
+            requests += frame.cache.getRequests();
+        }
+        return requests;
+    }
+
+    /**
+     * Report native memory held by frames and free it. Processors and sinks
+     * belong to the caller.
+     */
+    public void release() {
+        metrics.reportMemory("fan out", pool);
+        for (SharedFrame frame : sharedFrames) {
+            frame.cache.release();
+        }
+        pool.close();
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 1, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+
+/**
+ * Runs Canny, MotionDetect and PeopleDetect analyzers on one decoded stream
+ * with {@link FanOut}, so the source is decoded once instead of once per
+ * example. Each analyzer runs on its own thread and writes its own output
+ * file to ../output.
+ *
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/walking.mp4" if no args passed.
+ *
+ * -Danalyzers=canny,motion,people picks analyzers (default all three).
+ * -Ddetector, -Dpyramid, -Dbackground, -Dgrid, -Dmorphology, -Dcomponents
+ * and -Dgrayscale work as in MotionDetect and PeopleDetect. -Ddetector=tiled
+ * sets OpenCV to one thread for the whole process, since tiles already use
+ * every core.
+ *
+ * -Danalytics=true skips drawing and encoding, except every -Dsample=n
+ * frames. Analyzers then read shared frames without copying them.
+ *
+ * Canny and motion take their grayscale, blurred and pyramid images from the
+ * {@link FrameCache} of each shared frame, so images they have in common are
+ * computed once per frame. With -Dgrayscale=true motion starts from the same
+ * grayscale frame as Canny. The log shows how many images were computed and
+ * how many were requested.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class FanOutDetect {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF This is not a constant, so naming convenetion is correct
+    private static final Logger logger = Logger.getLogger(FanOutDetect.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Output file name format with one %s for analyzer name.
+     */
+    private static final String OUTPUT_FILE = "../output/fanout-%s-java.avi";
+    /**
+     * Output codec.
+     */
+    private static final String FOURCC = "DIVX";
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private FanOutDetect() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Edge analyzer.
+     *
+     * @param metrics
+     *            Process and draw timing.
+     * @return Processor.
+     */
+    private static FrameProcessor canny(final Metrics metrics) {
+        final EdgeDetector edgeDetector = new EdgeDetector();
+        return new CachedFrameProcessor() {
+            /**
+             * Frames processed.
+             */
+            private long frames;
+
+            @Override
+            public void process(final Mat mat) {
+                final long time = System.nanoTime();
+                edgeDetector.detect(mat);
+                draw(mat, time);
+            }
+
+            @Override
+            public void process(final Mat mat, final FrameCache cache) {
+                final long time = System.nanoTime();
+                edgeDetector.detect(cache);
+                draw(mat, time);
+            }
+
+            /**
+             * Record process time and draw edges if frame is encoded.
+             *
+             * @param mat
+             *            Frame.
+             * @param start
+             *            Process start time.
+             */
+            private void draw(final Mat mat, final long start) {
+                final long time = metrics.record(Metrics.Stage.PROCESS,
+                        start);
+                if (FrameIO.isEncoded(frames++)) {
+                    edgeDetector.draw(mat);
+                    metrics.record(Metrics.Stage.DRAW, time);
+                }
+            }
+
+            @Override
+            public void release() {
+                edgeDetector.release();
+            }
+        };
+    }
+
+    /**
+     * Motion analyzer.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param metrics
+     *            Process and draw timing.
+     * @return Processor.
+     */
+    private static FrameProcessor motion(final Size frameSize,
+            final Metrics metrics) {
+        final MotionDetector motionDetector = new MotionDetector(frameSize,
+                Integer.getInteger("pyramid", 0), MotionDetector
+                        .createModel(System.getProperty("background",
+                                "average")));
+        motionDetector.setGridStep(Integer.getInteger("grid", 0));
+        motionDetector.setMorphology(System.getProperty("morphology",
+                "iterated"));
+        motionDetector.setConnectedComponents(Boolean
+                .getBoolean("components"));
+        motionDetector.setGrayscale(Boolean.getBoolean("grayscale"));
+        return new CachedFrameProcessor() {
+            /**
+             * Frames processed.
+             */
+            private long frames;
+
+            @Override
+            public void process(final Mat mat) {
+                final long time = System.nanoTime();
+                draw(mat, motionDetector.detectBoxes(mat), time);
+            }
+
+            @Override
+            public void process(final Mat mat, final FrameCache cache) {
+                final long time = System.nanoTime();
+                draw(mat, motionDetector.detectBoxes(cache), time);
+            }
+
+            /**
+             * Record process time and draw boxes if frame is encoded.
+             *
+             * @param mat
+             *            Frame.
+             * @param count
+             *            Number of boxes.
+             * @param start
+             *            Process start time.
+             */
+            private void draw(final Mat mat, final int count,
+                    final long start) {
+                final long time = metrics.record(Metrics.Stage.PROCESS,
+                        start);
+                if (FrameIO.isEncoded(frames++)) {
+                    motionDetector.draw(mat, motionDetector.getBoxes(), count);
+                    metrics.record(Metrics.Stage.DRAW, time);
+                }
+            }
+
+            @Override
+            public void release() {
+                logger.log(Level.INFO, String.format(
+                        "motion: %d frames with motion", motionDetector
+                                .getFramesWithMotion()));
+                motionDetector.release();
+            }
+        };
+    }
+
+    /**
+     * People analyzer.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param metrics
+     *            Process and draw timing.
+     * @return Processor.
+     */
+    private static FrameProcessor people(final Size frameSize,
+            final Metrics metrics) {
+        final PeopleDetector peopleDetector = PeopleDetect.createDetector(
+                System.getProperty("detector", "full"), frameSize);
+        final MatOfRect foundLocations = new MatOfRect();
+        final MatOfDouble foundWeights = new MatOfDouble();
+        return new FrameProcessor() {
+            /**
+             * Frames processed.
+             */
+            private long frames;
+            /**
+             * Frames with people.
+             */
+            private int framesWithPeople;
+            /**
+             * Top left corner.
+             */
+            private final Point rectPoint1 = new Point();
+            /**
+             * Bottom right corner.
+             */
+            private final Point rectPoint2 = new Point();
+            /**
+             * Text origin.
+             */
+            private final Point fontPoint = new Point();
+
+            @Override
+            public void process(final Mat mat) {
+                long time = System.nanoTime();
+                peopleDetector.detect(mat, foundLocations, foundWeights);
+                time = metrics.record(Metrics.Stage.PROCESS, time);
+                if (foundLocations.rows() > 0) {
+                    framesWithPeople++;
+                }
+                if (FrameIO.isEncoded(frames++)) {
+                    PeopleDetect.draw(mat, foundLocations, foundWeights,
+                            rectPoint1, rectPoint2, fontPoint);
+                    metrics.record(Metrics.Stage.DRAW, time);
+                }
+            }
+
+            @Override
+            public void release() {
+                logger.log(Level.INFO, String.format(
+                        "people: %d frames with people", framesWithPeople));
+                peopleDetector.release();
+                foundLocations.release();
+                foundLocations.delete();
+                foundWeights.release();
+                foundWeights.delete();
+            }
+        };
+    }
+
+    /**
+     * Decode source once and run analyzers on it.
+     *
+     * args[0] = source file or will default to "../resources/walking.mp4" if
+     * no args passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String url = null;
+        // Check how many arguments were passed in
+        if (args.length == 0) {
+            url = "../resources/walking.mp4";
+        } else {
+            url = args[0];
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    FanOutDetect.class.getClassLoader().getResourceAsStream(
+                            "logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("Input file: %s", url));
+        final FrameSource source = FrameIO.source(url);
+        final Size frameSize = source.getFrameSize();
+        logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
+        if ("tiled".equals(System.getProperty("detector"))) {
+            // Parallelism comes from tiles, so keep OpenCV from
+            // oversubscribing
+            Core.setNumThreads(1);
+        }
+        final Metrics metrics = new Metrics("FanOut");
+        final FanOut fanOut = new FanOut(source, FanOut.DEFAULT_POOL_SIZE,
+                metrics);
+        final List<FrameProcessor> processors = new ArrayList<FrameProcessor>();
+        final List<FrameSink> sinks = new ArrayList<FrameSink>();
+        final List<Metrics> branchMetrics = new ArrayList<Metrics>();
+        for (String name : System.getProperty("analyzers",
+                "canny,motion,people").split(",")) {
+            final Metrics analyzerMetrics = new Metrics(name);
+            FrameProcessor processor = null;
+            if ("canny".equals(name)) {
+                processor = canny(analyzerMetrics);
+            } else if ("motion".equals(name)) {
+                processor = motion(frameSize, analyzerMetrics);
+            } else if ("people".equals(name)) {
+                processor = people(frameSize, analyzerMetrics);
+            } else {
+                throw new IllegalArgumentException(String.format(
+                        "Unknown analyzer %s", name));
+            }
+            final String outputFile = String.format(OUTPUT_FILE, name);
+            final FrameSink sink = FrameIO.sink(outputFile, new FourCC(
+                    FOURCC), FrameIO.fps(source), frameSize);
+            logger.log(Level.INFO, String.format("Analyzer %s -> %s", name,
+                    outputFile));
+            fanOut.add(name, processor, sink, analyzerMetrics);
+            processors.add(processor);
+            sinks.add(sink);
+            branchMetrics.add(analyzerMetrics);
+        }
+        metrics.start();
+        for (Metrics analyzerMetrics : branchMetrics) {
+            analyzerMetrics.start();
+        }
+        final long startTime = System.currentTimeMillis();
+        int frames = 0;
+        try {
+            frames = fanOut.run();
+            logger.log(Level.INFO, String.format(
+                    "Frame cache: %d images computed for %d requests", fanOut
+                            .getCacheComputed(), fanOut.getCacheRequests()));
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Fan-out interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Free native memory
+            fanOut.release();
+            for (FrameProcessor processor : processors) {
+                processor.release();
+            }
+            for (FrameSink sink : sinks) {
+                if (sink != null) {
+                    sink.release();
+                }
+            }
+            source.release();
+        }
+        final long estimatedTime = System.currentTimeMillis() - startTime;
+        metrics.stop();
+        for (Metrics analyzerMetrics : branchMetrics) {
+            analyzerMetrics.stop();
+        }
+        logger.log(Level.INFO, String.format("%d frames decoded once for %d "
+                + "analyzers", frames, processors.size()));
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
+                (double) estimatedTime / 1000));
+        // CHECKSTYLE:ON MagicNumber
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Images derived from one frame, computed on first use and kept until the
+ * next frame. Analyzers describe what they need with a {@link Key} such as
+ * "Gaussian 3x3 of gray of frame" and get the same Mat back, so each variant
+ * is computed at most once per frame no matter how many analyzers ask for it.
+ * Variant Mats are owned by the cache and reused for every frame.
+ *
+ * Analyzers on different threads can share a cache. A variant is computed by
+ * the first thread that asks for it while the others wait. Returned Mats are
+ * read-only and only valid until {@link #reset(Mat)}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class FrameCache {
+    /**
+     * Operation that derives a variant from its input.
+     */
+    enum Op {
+        /**
+         * The frame itself.
+         */
+        FRAME,
+        /**
+         * BGR to gray.
+         */
+        GRAY,
+        /**
+         * Box blur with size x size kernel.
+         */
+        BLUR,
+        /**
+         * Gaussian blur with size x size kernel and sigma from size.
+         */
+        GAUSSIAN,
+        /**
+         * Gaussian pyramid level, half width and height.
+         */
+        PYR_DOWN
+    }
+
+    /**
+     * Describes a variant by operation, parameter and input. Keys are
+     * immutable and compared by value, so analyzers create them once and keys
+     * describing the same variant find the same Mat.
+     */
+    static final class Key {
+        /**
+         * Operation.
+         */
+        private final Op op;
+        /**
+         * Kernel size or 0 if not used.
+         */
+        private final int size;
+        /**
+         * Input variant or null for frame.
+         */
+        private final Key input;
+        /**
+         * Cached hash code.
+         */
+        private final int hash;
+
+        /**
+         * Create key.
+         *
+         * @param op
+         *            Operation.
+         * @param size
+         *            Kernel size or 0 if not used.
+         * @param input
+         *            Input variant or null for frame.
+         */
+        private Key(final Op op, final int size, final Key input) {
+            this.op = op;
+            this.size = size;
+            this.input = input;
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            int value = op.hashCode() * 31 + size;
+            if (input != null) {
+                value = value * 31 + input.hashCode();
+            }
+            // CHECKSTYLE:ON MagicNumber
+            hash = value;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return op == other.op && size == other.size
+                    && (input == null ? other.input == null : input
+                            .equals(other.input));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            if (input == null) {
+                return op.name().toLowerCase();
+            }
+            if (size == 0) {
+                return String.format("%s(%s)", op.name().toLowerCase(), input);
+            }
+            return String.format("%s%d(%s)", op.name().toLowerCase(), size,
+                    input);
+        }
+    }
+
+    /**
+     * Variant Mat and the frame it was computed for.
+     */
+    private static final class Entry {
+        /**
+         * Variant.
+         */
+        private final Mat mat;
+        /**
+         * Frame generation mat was computed for.
+         */
+        private long generation = -1;
+
+        /**
+         * Create entry.
+         *
+         * @param mat
+         *            Variant buffer.
+         */
+        Entry(final Mat mat) {
+            this.mat = mat;
+        }
+    }
+
+    /**
+     * The frame.
+     */
+    public static final Key FRAME = new Key(Op.FRAME, 0, null);
+    /**
+     * Owns all variant Mats. MatPool is not thread safe, so it is only used
+     * while holding its lock.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Variants by key.
+     */
+    private final ConcurrentMap<Key, Entry> entries =
+            new ConcurrentHashMap<Key, Entry>();
+    /**
+     * Variants computed.
+     */
+    private final AtomicLong computed = new AtomicLong();
+    /**
+     * Variants requested.
+     */
+    private final AtomicLong requests = new AtomicLong();
+    /**
+     * Current frame.
+     */
+    private volatile Mat frame;
+    /**
+     * Incremented for every frame.
+     */
+    private volatile long generation;
+
+    /**
+     * Gray variant of input.
+     *
+     * @param input
+     *            BGR input.
+     * @return Key.
+     */
+    public static Key gray(final Key input) {
+        return new Key(Op.GRAY, 0, input);
+    }
+
+    /**
+     * Box blur variant of input.
+     *
+     * @param input
+     *            Input.
+     * @param size
+     *            Kernel width and height.
+     * @return Key.
+     */
+    public static Key blur(final Key input, final int size) {
+        return new Key(Op.BLUR, size, input);
+    }
+
+    /**
+     * Gaussian blur variant of input.
+     *
+     * @param input
+     *            Input.
+     * @param size
+     *            Odd kernel width and height.
+     * @return Key.
+     */
+    public static Key gaussian(final Key input, final int size) {
+        return new Key(Op.GAUSSIAN, size, input);
+    }
+
+    /**
+     * Next pyramid level of input.
+     *
+     * @param input
+     *            Input.
+     * @return Key.
+     */
+    public static Key pyrDown(final Key input) {
+        return new Key(Op.PYR_DOWN, 0, input);
+    }
+
+    /**
+     * Start a new frame. Every variant is computed again on first use. Must
+     * not be called while analyzers are still using the previous frame.
+     *
+     * @param mat
+     *            Frame. Must not be modified until the next reset.
+     */
+    public void reset(final Mat mat) {
+        frame = mat;
+        generation++;
+    }
+
+    /**
+     * Get variant of current frame, computing it if this is the first request
+     * since reset.
+     *
+     * @param key
+     *            Variant.
+     * @return Read-only variant, valid until next reset.
+     */
+    public Mat get(final Key key) {
+        if (key.op == Op.FRAME) {
+            return frame;
+        }
+        requests.incrementAndGet();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            // Only the first request for a key takes the lock
+            synchronized (pool) {
+                entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry(pool.acquire());
+                    entries.put(key, entry);
+                }
+            }
+        }
+        synchronized (entry) {
+            if (entry.generation != generation) {
+                compute(key, get(key.input), entry.mat);
+                entry.generation = generation;
+                computed.incrementAndGet();
+            }
+        }
+        return entry.mat;
+    }
+
+    /**
+     * Compute variant.
+     *
+     * @param key
+     *            Variant.
+     * @param source
+     *            Input image.
+     * @param destination
+     *            Variant buffer.
+     */
+    private static void compute(final Key key, final Mat source,
+            final Mat destination) {
+        switch (key.op) {
+        case GRAY:
+            Imgproc.cvtColor(source, destination, Imgproc.COLOR_BGR2GRAY);
+            break;
+        case BLUR:
+            Imgproc.blur(source, destination, new Size(key.size, key.size));
+            break;
+        case GAUSSIAN:
+            Imgproc.GaussianBlur(source, destination, new Size(key.size,
+                    key.size), 0);
+            break;
+        case PYR_DOWN:
+            Imgproc.pyrDown(source, destination);
+            break;
+        default:
+            throw new IllegalArgumentException(String.format(
+                    "Cannot compute %s", key));
+        }
+    }
+
+    /**
+     * Variants computed since cache was created.
+     *
+     * @return Count.
+     */
+    public long getComputed() {
+        return computed.get();
+    }
+
+    /**
+     * Variants requested since cache was created. Requests minus computed is
+     * the number of passes saved.
+     *
+     * @return Count.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Free native memory.
+     */
+    public void release() {
+        synchronized (pool) {
+            pool.close();
+        }
+    }
+}
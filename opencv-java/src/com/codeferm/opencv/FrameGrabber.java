@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Reads frames on its own thread and keeps only the newest one in a
+ * {@link LatestExchange}, so a consumer that falls behind skips stale frames
+ * instead of queueing them. File sources can be paced to their frame rate to
+ * behave like a live camera.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class FrameGrabber implements Runnable {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(FrameGrabber.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+
+    /**
+     * Captured frame with capture time and sequence number.
+     */
+    static final class Frame {
+        /**
+         * Frame image.
+         */
+        private final Mat mat = new Mat();
+        /**
+         * System.nanoTime() when frame was read.
+         */
+        private long time;
+        /**
+         * Zero based frame number including dropped frames.
+         */
+        private long sequence;
+
+        /**
+         * Frame image accessor.
+         *
+         * @return Frame image.
+         */
+        public Mat getMat() {
+            return mat;
+        }
+
+        /**
+         * Capture time accessor.
+         *
+         * @return System.nanoTime() when frame was read.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Sequence accessor.
+         *
+         * @return Zero based frame number including dropped frames.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Source of frames.
+     */
+    private final FrameSource source;
+    /**
+     * Nanoseconds between frames when pacing or zero.
+     */
+    private final long paceNanos;
+    /**
+     * Newest frame.
+     */
+    private final LatestExchange<Frame> exchange = new LatestExchange<Frame>(
+            new Frame(), new Frame(), new Frame());
+    /**
+     * Grabber thread.
+     */
+    private Thread thread;
+    /**
+     * Set false to stop grabbing.
+     */
+    private volatile boolean running;
+
+    /**
+     * Create grabber.
+     *
+     * @param source
+     *            Source of frames.
+     * @param paceFps
+     *            Frame rate to pace reads to or zero to read as fast as the
+     *            source allows (live cameras).
+     */
+    FrameGrabber(final FrameSource source, final double paceFps) {
+        this.source = source;
+        if (paceFps > 0) {
+            paceNanos = (long) (TimeUnit.SECONDS.toNanos(1) / paceFps);
+        } else {
+            paceNanos = 0;
+        }
+    }
+
+    /**
+     * Start grabber thread.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "grabber");
+        thread.start();
+    }
+
+    /**
+     * Stop grabber thread and wait for it to exit.
+     *
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+            thread = null;
+        }
+    }
+
+    /**
+     * Read frames until source is exhausted or stopped.
+     */
+    @Override
+    public void run() {
+        final long startTime = System.nanoTime();
+        long sequence = 0;
+        Frame frame = exchange.back();
+        while (running && source.read(frame.mat)) {
+            if (paceNanos > 0) {
+                final long delay = startTime + sequence * paceNanos
+                        - System.nanoTime();
+                if (delay > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    } catch (InterruptedException e) {
+                        logger.log(Level.FINE, "Grabber interrupted");
+                        break;
+                    }
+                }
+            }
+            frame.time = System.nanoTime();
+            frame.sequence = sequence++;
+            exchange.publish();
+            frame = exchange.back();
+        }
+        exchange.close();
+    }
+
+    /**
+     * Wait for newest frame. The returned frame is owned by the caller until
+     * the next call.
+     *
+     * @return Newest frame or null at end of stream.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public Frame next() throws InterruptedException {
+        return exchange.await();
+    }
+
+    /**
+     * Frames dropped because consumer was busy.
+     *
+     * @return Dropped frame count.
+     */
+    public long getDropped() {
+        return exchange.getDropped();
+    }
+
+    /**
+     * Free native memory. Call after stop.
+     */
+    public void release() {
+        for (Frame frame : exchange.buffers()) {
+            frame.mat.release();
+            frame.mat.delete();
+        }
+    }
+}
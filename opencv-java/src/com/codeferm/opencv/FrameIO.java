@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Size;
+
+/**
+ * Chooses frame sources and sinks for the examples, so every main accepts the
+ * same inputs and output options.
+ *
+ * Sources:
+ *
+ * camera index (-?\d+) = camera through VideoCapture
+ *
+ * directory = image sequence in file name order
+ *
+ * synthetic:WIDTHxHEIGHT:FRAMES = generated moving boxes, for example
+ * synthetic:640x480:900
+ *
+ * anything else = file or stream URL through VideoCapture
+ *
+ * Sinks use the example's output file and FourCC unless -Doutput=file or
+ * -Dfourcc=XXXX is set.
+ *
+ * -Danalytics=true skips drawing and encoding and only emits results (it
+ * turns -Dresults on). -Dsample=n still draws and encodes every nth frame for
+ * spot checks, written at fps / n so the clip plays in real time.
+ *
+ * -Dresults=true also writes detections to NDJSON files through an
+ * {@link EventSink}. -Dresults.file=pattern changes the file name format,
+ * -Dresults.mb=n (default 64) and -Dresults.minutes=n (default 60) set
+ * rotation limits.
+ *
+ * -Dmjpeg=port also serves written frames as MJPEG over HTTP (see
+ * {@link MjpegServer}), so a pipeline can be watched from a browser without a
+ * display. Each sink opened gets the next port, so examples with several
+ * outputs serve each one. -Dmjpeg.quality=n sets JPEG quality (default 80).
+ * In analytics mode frames are still streamed, but only sampled frames are
+ * drawn on.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class FrameIO {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(FrameIO.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /**
+     * Prefix of synthetic source URLs.
+     */
+    public static final String SYNTHETIC = "synthetic:";
+    /**
+     * Frame rate used when source does not report one.
+     */
+    public static final double DEFAULT_FPS = 30.0;
+    /**
+     * Moving boxes in synthetic frames.
+     */
+    private static final int SYNTHETIC_OBJECTS = 3;
+    /**
+     * Synthetic frame width if not specified.
+     */
+    private static final int SYNTHETIC_WIDTH = 640;
+    /**
+     * Synthetic frame height if not specified.
+     */
+    private static final int SYNTHETIC_HEIGHT = 480;
+    /**
+     * Synthetic frames if not specified.
+     */
+    private static final int SYNTHETIC_FRAMES = 900;
+    /**
+     * Result file size limit in megabytes if not specified.
+     */
+    private static final int RESULTS_MB = 64;
+    /**
+     * Result file age limit in minutes if not specified.
+     */
+    private static final int RESULTS_MINUTES = 60;
+    /**
+     * Analytics only, no drawing or encoding except sampled frames.
+     */
+    private static final boolean ANALYTICS = Boolean.getBoolean("analytics");
+    /**
+     * Encode every SAMPLE frames in analytics mode or 0 for none.
+     */
+    private static final int SAMPLE = Integer.getInteger("sample", 0);
+    /**
+     * MJPEG preview sinks opened, used to give each one its own port.
+     */
+    private static final AtomicInteger PREVIEWS = new AtomicInteger();
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private FrameIO() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Create synthetic source from synthetic:WIDTHxHEIGHT:FRAMES.
+     *
+     * @param spec
+     *            Part after prefix.
+     * @return Source.
+     */
+    private static FrameSource synthetic(final String spec) {
+        int width = SYNTHETIC_WIDTH;
+        int height = SYNTHETIC_HEIGHT;
+        int frames = SYNTHETIC_FRAMES;
+        final String[] parts = spec.split(":");
+        try {
+            if (parts.length > 0 && !parts[0].isEmpty()) {
+                final String[] size = parts[0].split("x");
+                width = Integer.parseInt(size[0]);
+                height = Integer.parseInt(size[1]);
+            }
+            if (parts.length > 1) {
+                frames = Integer.parseInt(parts[1]);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %sWIDTHxHEIGHT:FRAMES, got %s%s", SYNTHETIC,
+                    SYNTHETIC, spec), e);
+        }
+        return new SyntheticSource(new Size(width, height), DEFAULT_FPS,
+                frames, SYNTHETIC_OBJECTS);
+    }
+
+    /**
+     * Open source for URL.
+     *
+     * @param url
+     *            Camera index, image directory, synthetic spec, file or URL.
+     * @return Source.
+     */
+    public static FrameSource source(final String url) {
+        if (url.startsWith(SYNTHETIC)) {
+            return synthetic(url.substring(SYNTHETIC.length()));
+        }
+        final File file = new File(url);
+        if (file.isDirectory()) {
+            return new ImageSequenceSource(file, DEFAULT_FPS);
+        }
+        return new VideoSource(url);
+    }
+
+    /**
+     * Source frame rate or default if source does not report one.
+     *
+     * @param source
+     *            Source.
+     * @return Frames per second.
+     */
+    public static double fps(final FrameSource source) {
+        if (source.getFps() > 0) {
+            return source.getFps();
+        }
+        return DEFAULT_FPS;
+    }
+
+    /**
+     * Output file from -Doutput or default.
+     *
+     * @param defaultFile
+     *            Example's output file.
+     * @return Output file.
+     */
+    public static String outputFile(final String defaultFile) {
+        return System.getProperty("output", defaultFile);
+    }
+
+    /**
+     * True if -Danalytics=true.
+     *
+     * @return Analytics only mode.
+     */
+    public static boolean isAnalytics() {
+        return ANALYTICS;
+    }
+
+    /**
+     * True if frame will be encoded, so processors only draw on frames that
+     * are written.
+     *
+     * @param frame
+     *            Frame number counted from 0.
+     * @return True unless analytics mode skips this frame.
+     */
+    public static boolean isEncoded(final long frame) {
+        return !ANALYTICS || (SAMPLE > 0 && frame % SAMPLE == 0);
+    }
+
+    /**
+     * Open video sink, or in analytics mode a sampled sink or none.
+     *
+     * @param outputFile
+     *            Output file.
+     * @param fourCC
+     *            Codec.
+     * @param fps
+     *            Frame rate.
+     * @param frameSize
+     *            Frame size.
+     * @return Sink or null if nothing is encoded.
+     */
+    public static FrameSink sink(final String outputFile,
+            final FourCC fourCC, final double fps, final Size frameSize) {
+        if (!ANALYTICS) {
+            return preview(new VideoSink(outputFile, fourCC, fps, frameSize));
+        }
+        if (SAMPLE > 0) {
+            return preview(new SampledSink(new VideoSink(outputFile, fourCC,
+                    fps / SAMPLE, frameSize), SAMPLE));
+        }
+        return preview(null);
+    }
+
+    /**
+     * Put MJPEG preview in front of sink if -Dmjpeg=port is set.
+     *
+     * @param sink
+     *            Sink or null.
+     * @return Preview passing frames on to sink, or sink if preview is off or
+     *         cannot be started.
+     */
+    private static FrameSink preview(final FrameSink sink) {
+        final Integer port = Integer.getInteger("mjpeg");
+        if (port == null) {
+            return sink;
+        }
+        try {
+            return new MjpegServer(port + PREVIEWS.getAndIncrement(), Integer
+                    .getInteger("mjpeg.quality", MjpegServer.DEFAULT_QUALITY),
+                    sink);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to start MJPEG preview", e);
+            return sink;
+        }
+    }
+
+    /**
+     * Open video sink sized and timed to source.
+     *
+     * @param defaultFile
+     *            Example's output file, overridden by -Doutput.
+     * @param defaultFourCC
+     *            Example's codec, overridden by -Dfourcc.
+     * @param source
+     *            Source frames come from.
+     * @return Sink or null if nothing is encoded.
+     */
+    public static FrameSink sink(final String defaultFile,
+            final String defaultFourCC, final FrameSource source) {
+        return sink(outputFile(defaultFile), new FourCC(System.getProperty(
+                "fourcc", defaultFourCC)), fps(source), source.getFrameSize());
+    }
+
+    /**
+     * Start event sink if -Dresults=true or -Danalytics=true.
+     *
+     * @param defaultPattern
+     *            Example's result file format with one %d for file number,
+     *            overridden by -Dresults.file.
+     * @return Started sink or null if results are off.
+     */
+    public static EventSink results(final String defaultPattern) {
+        if (!ANALYTICS && !Boolean.getBoolean("results")) {
+            return null;
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final EventSink eventSink = new EventSink(System.getProperty(
+                "results.file", defaultPattern), Integer.getInteger(
+                "results.mb", RESULTS_MB) * 1024L * 1024L, TimeUnit.MINUTES
+                .toMillis(Integer.getInteger("results.minutes",
+                        RESULTS_MINUTES)));
+        // CHECKSTYLE:ON MagicNumber
+        eventSink.start();
+        return eventSink;
+    }
+}
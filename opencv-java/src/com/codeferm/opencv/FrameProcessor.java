@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Per-frame processing stage. Implementations keep their own working Mats, so
+ * a single instance should only be driven by one thread at a time.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface FrameProcessor {
+    /**
+     * Process frame in place. Any annotation is drawn directly on the frame.
+     *
+     * @param mat
+     *            Frame to process.
+     */
+    void process(Mat mat);
+
+    /**
+     * Release native memory held by processor.
+     */
+    void release();
+}
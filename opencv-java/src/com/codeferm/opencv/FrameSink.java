@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Consumes processed frames. See
+ * {@link FrameIO#sink(String, String, FrameSource)} for choosing an
+ * implementation from system properties.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface FrameSink {
+    /**
+     * Write frame. Frame is not modified and may be reused after return.
+     *
+     * @param mat
+     *            Frame.
+     */
+    void write(Mat mat);
+
+    /**
+     * Flush and release native resources held by sink.
+     */
+    void release();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Supplies frames to a processing loop. See {@link FrameIO#source(String)}
+ * for choosing an implementation from a command line argument.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface FrameSource {
+    /**
+     * Read next frame into caller supplied Mat.
+     *
+     * @param mat
+     *            Destination. Reallocated if size or type differs.
+     * @return False at end of stream.
+     */
+    boolean read(Mat mat);
+
+    /**
+     * Size of frames.
+     *
+     * @return Frame size.
+     */
+    Size getFrameSize();
+
+    /**
+     * Nominal frame rate.
+     *
+     * @return Frames per second or zero if unknown.
+     */
+    double getFps();
+
+    /**
+     * Live sources produce frames in real time and drop them if not read.
+     *
+     * @return True for cameras.
+     */
+    boolean isLive();
+
+    /**
+     * Release native resources held by source.
+     */
+    void release();
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+
+/**
+ * Checks {@link PyramidHogDetector} against detectMultiScale. Every
+ * detectMultiScale box whose height is inside the band should also be found
+ * by the band detector. Logs time per frame of each detector, reference boxes
+ * in the band, how many of them the band detector found exactly or with
+ * intersection over union of at least 0.5, how many it missed and how many
+ * band boxes detectMultiScale did not find. Missed boxes are detections the
+ * band detector loses.
+ *
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/walking.mp4" if no args passed.
+ *
+ * -Dminheight=px (default 128) and -Dmaxheight=px (default frame height) set
+ * the band as in PeopleDetect.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class HogCheck {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF This is not a constant, so naming convenetion is correct
+    private static final Logger logger = Logger.getLogger(HogCheck.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Intersection over union at which boxes are the same person.
+     */
+    private static final double IOU_THRESHOLD = 0.5;
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private HogCheck() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Index of first box with intersection over union of at least
+     * IOU_THRESHOLD.
+     *
+     * @param rect
+     *            Box to match.
+     * @param rects
+     *            Boxes to search.
+     * @return Index or -1 if none.
+     */
+    private static int match(final Rect rect, final Rect[] rects) {
+        for (int i = 0; i < rects.length; i++) {
+            if (NonMaxSuppression.iou(rect, rects[i]) >= IOU_THRESHOLD) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Milliseconds per frame.
+     *
+     * @param nanos
+     *            Total nanoseconds.
+     * @param frames
+     *            Frames.
+     * @return Milliseconds.
+     */
+    private static double millis(final long nanos, final int frames) {
+        return (double) TimeUnit.NANOSECONDS.toMicros(nanos
+                / Math.max(1, frames))
+                / TimeUnit.MILLISECONDS.toMicros(1);
+    }
+
+    /**
+     * Check band detector.
+     *
+     * args[0] = source file or will default to "../resources/walking.mp4" if
+     * no args passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String url = null;
+        // Check how many arguments were passed in
+        if (args.length == 0) {
+            url = "../resources/walking.mp4";
+        } else {
+            url = args[0];
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    HogCheck.class.getClassLoader().getResourceAsStream(
+                            "logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("Input file: %s", url));
+        final FrameSource source = FrameIO.source(url);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final int minHeight = Integer.getInteger("minheight", 128);
+        // CHECKSTYLE:ON MagicNumber
+        final int maxHeight = Integer.getInteger("maxheight", (int) source
+                .getFrameSize().height);
+        logger.log(Level.INFO, String.format("Person height %d to %d pixels",
+                minHeight, maxHeight));
+        final HogDetector hogDetector = new HogDetector();
+        final PyramidHogDetector pyramidHogDetector = new PyramidHogDetector(
+                minHeight, maxHeight);
+        long referenceNanos = 0;
+        long bandNanos = 0;
+        long levels = 0;
+        int inBand = 0;
+        int exact = 0;
+        int overlapping = 0;
+        int missed = 0;
+        int extra = 0;
+        int frames = 0;
+        // Pool releases native memory even if the loop throws
+        try (MatPool pool = new MatPool()) {
+            final Mat mat = pool.acquire();
+            final MatOfRect referenceLocations = pool.track(new MatOfRect());
+            final MatOfDouble referenceWeights = pool
+                    .track(new MatOfDouble());
+            final MatOfRect bandLocations = pool.track(new MatOfRect());
+            final MatOfDouble bandWeights = pool.track(new MatOfDouble());
+            while (source.read(mat)) {
+                long start = System.nanoTime();
+                hogDetector.detect(mat, referenceLocations, referenceWeights);
+                referenceNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                pyramidHogDetector.detect(mat, bandLocations, bandWeights);
+                bandNanos += System.nanoTime() - start;
+                levels += pyramidHogDetector.getLevels();
+                final Rect[] reference = referenceLocations.toArray();
+                final Rect[] band = bandLocations.toArray();
+                for (Rect rect : reference) {
+                    if (rect.height < minHeight || rect.height > maxHeight) {
+                        continue;
+                    }
+                    inBand++;
+                    final int i = match(rect, band);
+                    if (i < 0) {
+                        missed++;
+                    } else if (band[i].equals(rect)) {
+                        exact++;
+                    } else {
+                        overlapping++;
+                    }
+                }
+                for (Rect rect : band) {
+                    if (match(rect, reference) < 0) {
+                        extra++;
+                    }
+                }
+                frames++;
+            }
+        } finally {
+            // Free native memory
+            hogDetector.release();
+            pyramidHogDetector.release();
+            source.release();
+        }
+        logger.log(Level.INFO, String.format(
+                "detectMultiScale %6.3f ms/frame, band %6.3f ms/frame, "
+                        + "%4.1f levels/frame, %d frames", millis(
+                        referenceNanos, frames), millis(bandNanos, frames),
+                (double) levels / Math.max(1, frames), frames));
+        logger.log(Level.INFO, String.format(
+                "%d detectMultiScale boxes in band, %d found exactly, "
+                        + "%d overlapping, %d missed, %d extra", inBand,
+                exact, overlapping, missed, extra));
+    }
+}
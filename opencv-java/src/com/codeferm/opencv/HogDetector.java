@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.HOGDescriptor;
+
+/**
+ * Histogram of Oriented Gradients people detector using a single
+ * detectMultiScale call over the whole frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class HogDetector implements PeopleDetector {
+    /**
+     * Default window stride.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    public static final Size WIN_STRIDE = new Size(8, 8);
+    /**
+     * Default padding.
+     */
+    public static final Size PADDING = new Size(32, 32);
+    /**
+     * Default pyramid scale.
+     */
+    public static final double SCALE = 1.05;
+    /**
+     * Default final threshold used for grouping.
+     */
+    public static final double FINAL_THRESHOLD = 2.0;
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * HOG descriptor.
+     */
+    private final HOGDescriptor hog;
+    /**
+     * SVM coefficients.
+     */
+    private final MatOfFloat descriptors;
+    /**
+     * Window stride.
+     */
+    private final Size winStride;
+    /**
+     * Padding.
+     */
+    private final Size padding;
+    /**
+     * Pyramid scale.
+     */
+    private final double scale;
+
+    /**
+     * Create detector using default people detector and default parameters.
+     */
+    HogDetector() {
+        this(WIN_STRIDE, PADDING, SCALE);
+    }
+
+    /**
+     * Create detector using default people detector.
+     *
+     * @param winStride
+     *            Window stride.
+     * @param padding
+     *            Padding.
+     * @param scale
+     *            Pyramid scale.
+     */
+    HogDetector(final Size winStride, final Size padding, final double scale) {
+        this.winStride = winStride;
+        this.padding = padding;
+        this.scale = scale;
+        hog = new HOGDescriptor();
+        descriptors = HOGDescriptor.getDefaultPeopleDetector();
+        hog.setSVMDetector(descriptors);
+    }
+
+    @Override
+    public void detect(final Mat mat, final MatOfRect foundLocations,
+            final MatOfDouble foundWeights) {
+        hog.detectMultiScale(mat, foundLocations, foundWeights, 0.0, winStride,
+                padding, scale, FINAL_THRESHOLD, false);
+    }
+
+    /**
+     * HOG descriptor accessor.
+     *
+     * @return HOG descriptor.
+     */
+    public HOGDescriptor getHog() {
+        return hog;
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        descriptors.release();
+        descriptors.delete();
+        hog.delete();
+    }
+}
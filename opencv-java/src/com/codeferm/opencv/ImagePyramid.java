@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 26, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Image pyramid built once per frame into reusable buffers. Only levels whose
+ * downscale factor lies between a minimum and maximum are built, so callers
+ * that know the size of what they are looking for never pay for levels that
+ * cannot contain it.
+ *
+ * Level Mats keep their buffers across frames of the same size, so steady
+ * state builds do not allocate. Level 0 is the frame itself when the minimum
+ * factor is 1. Levels are only valid until the next build.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class ImagePyramid {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Most levels ever built.
+     */
+    private static final int MAX_LEVELS = 64;
+    /**
+     * Factor between levels.
+     */
+    private final double scale;
+    /**
+     * Owns level buffers.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Level buffers, created on first use.
+     */
+    private final Mat[] buffers = new Mat[MAX_LEVELS];
+    /**
+     * Levels of last build.
+     */
+    private final Mat[] levels = new Mat[MAX_LEVELS];
+    /**
+     * Downscale factor of each level.
+     */
+    private final double[] factors = new double[MAX_LEVELS];
+    /**
+     * Level size.
+     */
+    private final Size size = new Size();
+    /**
+     * Levels built.
+     */
+    private int count;
+
+    /**
+     * Create pyramid.
+     *
+     * @param scale
+     *            Factor between levels, greater than 1.
+     */
+    ImagePyramid(final double scale) {
+        if (scale <= 1.0) {
+            throw new IllegalArgumentException(
+                    "Scale must be greater than one");
+        }
+        this.scale = scale;
+    }
+
+    /**
+     * Build levels from minFactor to maxFactor. Building stops early once a
+     * level is smaller than minSize.
+     *
+     * @param mat
+     *            Frame.
+     * @param minFactor
+     *            Downscale factor of first level, at least 1.
+     * @param maxFactor
+     *            Largest downscale factor to build.
+     * @param minSize
+     *            Smallest useful level size.
+     * @return Levels built.
+     */
+    public int build(final Mat mat, final double minFactor,
+            final double maxFactor, final Size minSize) {
+        count = 0;
+        double factor = Math.max(1.0, minFactor);
+        while (count < MAX_LEVELS && factor <= maxFactor) {
+            size.width = Math.round(mat.cols() / factor);
+            size.height = Math.round(mat.rows() / factor);
+            if (size.width < minSize.width || size.height < minSize.height) {
+                break;
+            }
+            if (factor == 1.0) {
+                levels[count] = mat;
+            } else {
+                if (buffers[count] == null) {
+                    buffers[count] = pool.acquire();
+                }
+                Imgproc.resize(mat, buffers[count], size, 0, 0,
+                        Imgproc.INTER_LINEAR);
+                levels[count] = buffers[count];
+            }
+            factors[count++] = factor;
+            factor *= scale;
+        }
+        return count;
+    }
+
+    /**
+     * Levels built by last build.
+     *
+     * @return Level count.
+     */
+    public int getLevels() {
+        return count;
+    }
+
+    /**
+     * Level image.
+     *
+     * @param level
+     *            Level index.
+     * @return Level Mat, valid until next build.
+     */
+    public Mat getLevel(final int level) {
+        return levels[level];
+    }
+
+    /**
+     * Downscale factor of level. Multiply level coordinates by this to get
+     * frame coordinates.
+     *
+     * @param level
+     *            Level index.
+     * @return Factor.
+     */
+    public double getFactor(final int level) {
+        return factors[level];
+    }
+
+    /**
+     * Factor between levels.
+     *
+     * @return Scale.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Free native memory.
+     */
+    public void release() {
+        pool.close();
+        count = 0;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Frames from a directory of still images read in file name order. Useful for
+ * exported frame sequences and for repeatable tests without a video codec.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class ImageSequenceSource implements FrameSource {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Image file extensions imread handles everywhere.
+     */
+    private static final String[] EXTENSIONS = {".jpg", ".jpeg", ".png",
+            ".bmp", ".tif", ".tiff", ".ppm", ".pgm" };
+    /**
+     * Image files in order.
+     */
+    private final File[] files;
+    /**
+     * Size of first image.
+     */
+    private final Size frameSize;
+    /**
+     * Frame rate to report.
+     */
+    private final double fps;
+    /**
+     * Next file.
+     */
+    private int index;
+
+    /**
+     * Open image directory.
+     *
+     * @param dir
+     *            Directory of images.
+     * @param fps
+     *            Frame rate to report.
+     */
+    ImageSequenceSource(final File dir, final double fps) {
+        final File[] listed = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                final String name = file.getName().toLowerCase(Locale.US);
+                for (String extension : EXTENSIONS) {
+                    if (name.endsWith(extension)) {
+                        return file.isFile();
+                    }
+                }
+                return false;
+            }
+        });
+        if (listed == null || listed.length == 0) {
+            throw new IllegalArgumentException(String.format(
+                    "No images in %s", dir));
+        }
+        Arrays.sort(listed);
+        files = listed;
+        this.fps = fps;
+        final Mat first = Imgcodecs.imread(files[0].getPath());
+        frameSize = first.size();
+        first.release();
+        first.delete();
+    }
+
+    @Override
+    public boolean read(final Mat mat) {
+        while (index < files.length) {
+            // imread always returns a new Mat
+            final Mat image = Imgcodecs.imread(files[index++].getPath());
+            final boolean ok = !image.empty();
+            if (ok) {
+                image.copyTo(mat);
+            }
+            image.release();
+            image.delete();
+            if (ok) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Size getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public double getFps() {
+        return fps;
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public void release() {
+        index = files.length;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Running average background kept in fixed point integers. The background is
+ * CV_16U with 8 fractional bits, so a pixel value v is stored as v * 256. The
+ * frame is scaled to the same fixed point and addWeighted blends it into the
+ * background in place, then the background is rounded back to 8 bits for the
+ * difference. There is no CV_32F accumulator, and the background is half the
+ * size of one.
+ *
+ * addWeighted rounds to the nearest fixed point step, so a pixel only moves
+ * toward the frame while |frame - background| * 256 * alpha is at least 0.5.
+ * With the default alpha the background stays within 0.07 levels of the
+ * CV_32F average of {@link RunningAverageModel}. After rounding to 8 bits the
+ * two only differ where the average is that close to a half level, so edges
+ * almost always cross the threshold at the same frames.
+ * {@link BackgroundCompare} logs how closely the masks agree.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class IntegerAverageModel implements BackgroundModel {
+    /**
+     * Fractional bits of the background.
+     */
+    private static final int FRACTION_BITS = 8;
+    /**
+     * Fixed point value of 1.
+     */
+    private static final double ONE = 1 << FRACTION_BITS;
+    /**
+     * Owns all working Mats.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Fixed point background image.
+     */
+    private final Mat background = pool.acquire();
+    /**
+     * Fixed point frame.
+     */
+    private final Mat scaledFrame = pool.acquire();
+    /**
+     * Background rounded to 8 bits.
+     */
+    private final Mat roundedBackground = pool.acquire();
+    /**
+     * Difference image.
+     */
+    private final Mat diffImg = pool.acquire();
+    /**
+     * Sampled frame.
+     */
+    private final Mat gridFrame = pool.acquire();
+    /**
+     * Sampled background.
+     */
+    private final Mat gridBackground = pool.acquire();
+    /**
+     * Sampled difference.
+     */
+    private final Mat gridDiff = pool.acquire();
+    /**
+     * Sampled foreground.
+     */
+    private final Mat gridMask = pool.acquire();
+    /**
+     * Moving average alpha.
+     */
+    private final double alpha;
+    /**
+     * Threshold used to convert difference to BW.
+     */
+    private final double threshold;
+
+    /**
+     * Create model with default alpha and threshold.
+     */
+    IntegerAverageModel() {
+        this(RunningAverageModel.ALPHA, RunningAverageModel.THRESHOLD);
+    }
+
+    /**
+     * Create model.
+     *
+     * @param alpha
+     *            Moving average alpha.
+     * @param threshold
+     *            Threshold used to convert difference to BW.
+     */
+    IntegerAverageModel(final double alpha, final double threshold) {
+        this.alpha = alpha;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void apply(final Mat frame, final Mat foreground) {
+        update(frame);
+        difference(frame, roundedBackground, diffImg, foreground);
+    }
+
+    @Override
+    public double estimate(final Mat frame, final int step) {
+        update(frame);
+        SparseGrid.sample(frame, gridFrame, step);
+        SparseGrid.sample(roundedBackground, gridBackground, step);
+        difference(gridFrame, gridBackground, gridDiff, gridMask);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        return 100.0 * Core.countNonZero(gridMask) / gridMask.total();
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    @Override
+    public void foreground(final Mat frame, final Mat foreground) {
+        difference(frame, roundedBackground, diffImg, foreground);
+    }
+
+    /**
+     * Blend frame into background and round background to 8 bits.
+     *
+     * @param frame
+     *            Frame.
+     */
+    private void update(final Mat frame) {
+        if (background.empty()) {
+            reset(frame);
+        }
+        // Frame to fixed point, exact since 255 * 256 fits 16 bits
+        frame.convertTo(scaledFrame, CvType.CV_16U, ONE);
+        // background = frame * alpha + background * (1 - alpha), rounded
+        Core.addWeighted(scaledFrame, alpha, background, 1.0 - alpha, 0.0,
+                background);
+        background.convertTo(roundedBackground, CvType.CV_8U, 1.0 / ONE);
+    }
+
+    /**
+     * Threshold difference between frame and background.
+     *
+     * @param frame
+     *            Frame.
+     * @param reference
+     *            Background of the same size.
+     * @param diff
+     *            Difference work Mat.
+     * @param foreground
+     *            Foreground mask.
+     */
+    private void difference(final Mat frame, final Mat reference,
+            final Mat diff, final Mat foreground) {
+        Core.absdiff(frame, reference, diff);
+        Mat gray = diff;
+        if (diff.channels() > 1) {
+            Imgproc.cvtColor(diff, foreground, Imgproc.COLOR_BGR2GRAY);
+            gray = foreground;
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        Imgproc.threshold(gray, foreground, threshold, 255,
+                Imgproc.THRESH_BINARY);
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    @Override
+    public void reset(final Mat frame) {
+        frame.convertTo(background, CvType.CV_16U, ONE);
+        frame.copyTo(roundedBackground);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        pool.close();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Original morphology: dilate and erode with a 3x3 cross kernel repeated once
+ * per iteration. OpenCV only folds iterations into one larger kernel for
+ * rectangular kernels, so every iteration is a full pass over the mask. This
+ * is the reference the other {@link Morphology} implementations are checked
+ * against.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class IteratedMorphology implements Morphology {
+    /**
+     * Point used for contour dilate and erode.
+     */
+    private static final Point CONTOUR_POINT = new Point(-1, -1);
+    /**
+     * Kernel used for contours.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final Mat contourKernel = Imgproc.getStructuringElement(
+            Imgproc.MORPH_DILATE, new Size(3, 3), new Point(1, 1));
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Dilate iterations.
+     */
+    private final int dilateIterations;
+    /**
+     * Erode iterations.
+     */
+    private final int erodeIterations;
+
+    /**
+     * Create morphology.
+     *
+     * @param dilateIterations
+     *            Dilate iterations.
+     * @param erodeIterations
+     *            Erode iterations.
+     */
+    IteratedMorphology(final int dilateIterations, final int erodeIterations) {
+        this.dilateIterations = dilateIterations;
+        this.erodeIterations = erodeIterations;
+    }
+
+    @Override
+    public void apply(final Mat mask) {
+        Imgproc.dilate(mask, mask, contourKernel, CONTOUR_POINT,
+                dilateIterations);
+        Imgproc.erode(mask, mask, contourKernel, CONTOUR_POINT,
+                erodeIterations);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        contourKernel.release();
+        contourKernel.delete();
+    }
+}
@@ -10,6 +10,7 @@ import java.awt.AWTEvent;
 import java.awt.Frame;
 import java.awt.event.AWTEventListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowEvent;
 
 /**
  * Frame that listens for keyboard input.
@@ -33,7 +34,9 @@ public class KeyEventFrame extends Frame implements AWTEventListener {
     }
 
     /**
-     * Handle key events and exit if escape pressed.
+     * Handle key events and close window if escape pressed. Escape goes
+     * through the same window listeners as the close button, so owners can
+     * stop their threads cleanly.
      *
      * @param event
      *            AWT event.
@@ -44,10 +47,11 @@ public class KeyEventFrame extends Frame implements AWTEventListener {
             KeyEvent key = (KeyEvent) event;
             // Handle key presses
             if (key.getID() == KeyEvent.KEY_PRESSED) {
-                // Exit if escape pressed
+                // Close if escape pressed
                 if (key.getKeyChar() == KeyEvent.VK_ESCAPE) {
                     key.consume();
-                    System.exit(0);
+                    dispatchEvent(new WindowEvent(this,
+                            WindowEvent.WINDOW_CLOSING));
                 }
                 key.consume();
             }
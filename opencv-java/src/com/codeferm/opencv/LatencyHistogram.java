@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear latency histogram in the style of HdrHistogram. Every
+ * power of two range is split into 32 linear buckets, so recorded values keep
+ * about 3% precision from 1 ns up to about 68 seconds. Recording is a couple
+ * of shifts and an atomic increment and never allocates, so it is safe to call
+ * from the frame loop while another thread drains counts for reporting.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class LatencyHistogram {
+    /**
+     * Bits of precision below the highest set bit.
+     */
+    private static final int SUB_BITS = 5;
+    /**
+     * Linear buckets per power of two.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /**
+     * Highest power of two tracked (2^36 ns is about 68 seconds).
+     */
+    private static final int MAX_EXPONENT = 36;
+    /**
+     * Largest value tracked. Larger values are clamped.
+     */
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    /**
+     * Total bucket count.
+     */
+    private static final int BUCKETS = SUB_COUNT + (MAX_EXPONENT - SUB_BITS + 1)
+            * SUB_COUNT;
+    /**
+     * Bucket counts.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Largest value recorded since last drain.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Bucket holding value.
+     *
+     * @param value
+     *            Non-negative value.
+     * @return Bucket index.
+     */
+    static int index(final long value) {
+        final long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+        if (clamped < SUB_COUNT) {
+            return (int) clamped;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(clamped);
+        final int shift = exponent - SUB_BITS;
+        final int sub = (int) (clamped >> shift) & (SUB_COUNT - 1);
+        return SUB_COUNT + shift * SUB_COUNT + sub;
+    }
+
+    /**
+     * Middle of bucket.
+     *
+     * @param index
+     *            Bucket index.
+     * @return Representative value.
+     */
+    static long value(final int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_COUNT) / SUB_COUNT;
+        final int sub = (index - SUB_COUNT) % SUB_COUNT;
+        final long lowest = (long) (SUB_COUNT + sub) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value
+     *            Value in nanoseconds.
+     */
+    public void record(final long value) {
+        counts.incrementAndGet(index(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Move counts into caller supplied array and reset. Values recorded while
+     * draining land in either this or the next drain, never both.
+     *
+     * @param target
+     *            Array of at least {@link #buckets()} elements.
+     * @return Largest value recorded since last drain.
+     */
+    public long drainTo(final long[] target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target[i] = counts.getAndSet(i, 0);
+        }
+        return max.getAndSet(0);
+    }
+
+    /**
+     * Number of buckets a drain target needs.
+     *
+     * @return Bucket count.
+     */
+    public static int buckets() {
+        return BUCKETS;
+    }
+
+    /**
+     * Total count of drained buckets.
+     *
+     * @param drained
+     *            Drained counts.
+     * @return Total count.
+     */
+    public static long count(final long[] drained) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += drained[i];
+        }
+        return total;
+    }
+
+    /**
+     * Value at percentile of drained buckets.
+     *
+     * @param drained
+     *            Drained counts.
+     * @param total
+     *            Total count of drained buckets.
+     * @param percentile
+     *            Percentile from 0 to 100.
+     * @return Value or zero if nothing was recorded.
+     */
+    public static long percentile(final long[] drained, final long total,
+            final double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile
+                / 100.0));
+        // CHECKSTYLE:ON MagicNumber
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += drained[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return value(BUCKETS - 1);
+    }
+}
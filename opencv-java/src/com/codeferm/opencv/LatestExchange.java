@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single producer, single consumer triple buffer that only keeps the
+ * newest item. The producer fills {@link #back()} and publishes it. The
+ * consumer takes the newest published buffer and owns it until the next take.
+ * Buffers published but never taken are recycled, so a slow consumer drops
+ * stale items instead of queueing them.
+ *
+ * @param <T>
+ *            Buffer type.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class LatestExchange<T> {
+    /**
+     * Middle buffer has not been taken yet.
+     */
+    private static final int FRESH = 4;
+    /**
+     * Buffer index bits.
+     */
+    private static final int INDEX_MASK = 3;
+    /**
+     * The three buffers.
+     */
+    private final T[] buffers;
+    /**
+     * Index of middle buffer plus fresh flag.
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /**
+     * Items published but never taken.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Index of buffer owned by producer.
+     */
+    private int back;
+    /**
+     * Index of buffer owned by consumer.
+     */
+    private int front = 2;
+    /**
+     * Consumer parked in await.
+     */
+    private volatile Thread waiter;
+    /**
+     * Producer is done.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create exchange from three distinct buffers.
+     *
+     * @param first
+     *            First buffer.
+     * @param second
+     *            Second buffer.
+     * @param third
+     *            Third buffer.
+     */
+    @SuppressWarnings("unchecked")
+    LatestExchange(final T first, final T second, final T third) {
+        buffers = (T[]) new Object[] {first, second, third };
+    }
+
+    /**
+     * Buffer the producer should fill next.
+     *
+     * @return Producer buffer.
+     */
+    public T back() {
+        return buffers[back];
+    }
+
+    /**
+     * Publish producer buffer as newest item.
+     *
+     * @return True if previous item was never taken and has been dropped.
+     */
+    public boolean publish() {
+        final int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        final boolean stale = (previous & FRESH) != 0;
+        if (stale) {
+            dropped.incrementAndGet();
+        }
+        final Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return stale;
+    }
+
+    /**
+     * Mark producer done and wake consumer.
+     */
+    public void close() {
+        closed = true;
+        final Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Take newest item without waiting. The previously taken buffer is given
+     * back to the producer.
+     *
+     * @return Newest item or null if nothing new was published.
+     */
+    public T take() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return buffers[front];
+    }
+
+    /**
+     * Wait for a new item.
+     *
+     * @return Newest item or null if producer closed and nothing is left.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public T await() throws InterruptedException {
+        waiter = Thread.currentThread();
+        try {
+            T item = take();
+            while (item == null && !closed) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                item = take();
+            }
+            if (item == null) {
+                // Producer may have published right before closing
+                item = take();
+            }
+            return item;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Items published but never taken.
+     *
+     * @return Dropped count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * All three buffers, for releasing resources.
+     *
+     * @return Buffers.
+     */
+    public List<T> buffers() {
+        return Collections.unmodifiableList(Arrays.asList(buffers));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 18, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Owns native Mat memory for a scope. Every Mat created or tracked by the
+ * pool is released and deleted exactly once when the pool is closed, so using
+ * the pool in a try-with-resources block frees native memory even when the
+ * frame loop throws. The pool does not reuse Mats. Frame loops acquire their
+ * buffers once before the loop and OpenCV reuses each buffer across frames of
+ * the same size.
+ *
+ * A pool is not thread safe. Give each thread or stream its own pool.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MatPool implements AutoCloseable {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Every Mat owned by pool.
+     */
+    private final List<Mat> owned = new ArrayList<Mat>();
+    /**
+     * Pool has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Fail if pool has been closed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Mat pool is closed");
+        }
+    }
+
+    /**
+     * Create a Mat of given size and type. Contents are undefined.
+     *
+     * @param rows
+     *            Rows.
+     * @param cols
+     *            Columns.
+     * @param type
+     *            CvType.
+     * @return Pooled Mat.
+     */
+    public Mat acquire(final int rows, final int cols, final int type) {
+        checkOpen();
+        return track(new Mat(rows, cols, type));
+    }
+
+    /**
+     * Create an empty Mat that an OpenCV function will allocate into. Once
+     * allocated it keeps its buffer across frames of the same size.
+     *
+     * @return Pooled Mat.
+     */
+    public Mat acquire() {
+        checkOpen();
+        return track(new Mat());
+    }
+
+    /**
+     * Take ownership of a Mat created elsewhere, such as a MatOfRect or a
+     * structuring element.
+     *
+     * @param mat
+     *            Mat to own.
+     * @param <T>
+     *            Mat type.
+     * @return Same Mat.
+     */
+    public <T extends Mat> T track(final T mat) {
+        checkOpen();
+        owned.add(mat);
+        return mat;
+    }
+
+    /**
+     * Number of Mats owned.
+     *
+     * @return Mat count.
+     */
+    public int getCount() {
+        return owned.size();
+    }
+
+    /**
+     * Native bytes held by owned Mats.
+     *
+     * @return Bytes.
+     */
+    public long getLiveBytes() {
+        long bytes = 0;
+        for (Mat mat : owned) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Release and delete every owned Mat. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            for (Mat mat : owned) {
+                mat.release();
+                mat.delete();
+            }
+            owned.clear();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-stage latency for a frame loop. Stages are timed with
+ * {@link #record(Stage, long)}, which never allocates. A daemon thread logs
+ * p50, p99 and max of every stage each period, and the same values are
+ * published as JMX MXBeans named
+ * com.codeferm.opencv:type=Stage,name=&lt;name&gt;,stage=&lt;stage&gt;.
+ *
+ * Native memory held by a {@link MatPool} is logged with
+ * {@link #reportMemory(String, MatPool)} when the loop that owns the pool
+ * ends.
+ *
+ * -Dmetrics.period=n sets reporting period in seconds (default 10).
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class Metrics {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(Metrics.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /**
+     * Default reporting period in seconds.
+     */
+    private static final int DEFAULT_PERIOD = 10;
+
+    /**
+     * Frame loop stages.
+     */
+    enum Stage {
+        /**
+         * Decode frame.
+         */
+        READ,
+        /**
+         * Analyze frame.
+         */
+        PROCESS,
+        /**
+         * Annotate frame.
+         */
+        DRAW,
+        /**
+         * Encode frame.
+         */
+        WRITE
+    }
+
+    /**
+     * Loop name.
+     */
+    private final String name;
+    /**
+     * One entry per stage, indexed by ordinal.
+     */
+    private final StageMetrics[] stages;
+    /**
+     * Registered MXBean names.
+     */
+    private final ObjectName[] objectNames;
+    /**
+     * Reporter.
+     */
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Create metrics.
+     *
+     * @param name
+     *            Loop name used in log lines and JMX names.
+     */
+    Metrics(final String name) {
+        this.name = name;
+        final Stage[] values = Stage.values();
+        stages = new StageMetrics[values.length];
+        objectNames = new ObjectName[values.length];
+        for (Stage stage : values) {
+            stages[stage.ordinal()] = new StageMetrics(stage.name()
+                    .toLowerCase());
+        }
+    }
+
+    /**
+     * Record time spent in stage.
+     *
+     * @param stage
+     *            Stage.
+     * @param startTime
+     *            System.nanoTime() when stage started.
+     * @return System.nanoTime() now, so the next stage can start from it.
+     */
+    public long record(final Stage stage, final long startTime) {
+        final long now = System.nanoTime();
+        stages[stage.ordinal()].record(now - startTime);
+        return now;
+    }
+
+    /**
+     * Stage metrics.
+     *
+     * @param stage
+     *            Stage.
+     * @return Stage metrics.
+     */
+    public StageMetrics get(final Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * Log native memory held by a pool. MatPool is not thread safe, so this
+     * must be called by the thread that owns the pool, before it is closed.
+     *
+     * @param owner
+     *            What the pool belongs to.
+     * @param pool
+     *            Pool.
+     */
+    public void reportMemory(final String owner, final MatPool pool) {
+        logger.log(Level.INFO, String.format(
+                "%s %s native memory: %d bytes in %d Mats", name, owner,
+                pool.getLiveBytes(), pool.getCount()));
+    }
+
+    /**
+     * Register MXBeans and start periodic reporting.
+     */
+    public void start() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; i < stages.length; i++) {
+            try {
+                final ObjectName objectName = new ObjectName(String.format(
+                        "com.codeferm.opencv:type=Stage,name=%s,stage=%s",
+                        ObjectName.quote(name), stages[i].getName()));
+                server.registerMBean(stages[i], objectName);
+                objectNames[i] = objectName;
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Unable to register MXBean", e);
+            }
+        }
+        final int period = Integer.getInteger("metrics.period",
+                DEFAULT_PERIOD);
+        reporter = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "metrics");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop reporting, log final interval and unregister MXBeans.
+     */
+    public void stop() {
+        if (reporter != null) {
+            reporter.shutdown();
+            try {
+                reporter.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reporter = null;
+        }
+        report();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; i < objectNames.length; i++) {
+            if (objectNames[i] != null) {
+                try {
+                    server.unregisterMBean(objectNames[i]);
+                } catch (JMException e) {
+                    logger.log(Level.FINE, "Unable to unregister MXBean", e);
+                }
+                objectNames[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Snapshot every stage and log stages that saw frames.
+     */
+    private void report() {
+        for (StageMetrics stageMetrics : stages) {
+            stageMetrics.snapshot();
+            if (stageMetrics.getCount() > 0) {
+                logger.log(Level.INFO, String.format("%s %s", name,
+                        stageMetrics));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+
+/**
+ * Headless version of {@link CaptureUI}. Serves a source as MJPEG over HTTP
+ * with {@link MjpegServer}, so it can be viewed from a browser on machines
+ * without a display. Files are paced to their frame rate like a live camera.
+ *
+ * args[0] = camera index, url (see {@link FrameIO}) or will default to "0" if
+ * no args passed.
+ *
+ * -Dmjpeg=port sets the port (default 8080) and -Dmjpeg.quality=n the JPEG
+ * quality (default 80).
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MjpegPreview {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF This is not a constant, so naming convenetion is correct
+    private static final Logger logger = Logger.getLogger(MjpegPreview.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Port if -Dmjpeg is not set.
+     */
+    private static final int DEFAULT_PORT = 8080;
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private MjpegPreview() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Serve source until it ends.
+     *
+     * args[0] = camera index, url or will default to "0" if no args passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String url = null;
+        // Check how many arguments were passed in
+        if (args.length == 0) {
+            // If no arguments were passed then default to camera index 0
+            url = "0";
+        } else {
+            url = args[0];
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    MjpegPreview.class.getClassLoader().getResourceAsStream(
+                            "logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("URL: %s", url));
+        final FrameSource source = FrameIO.source(url);
+        logger.log(Level.INFO, String.format("Resolution: %s", source
+                .getFrameSize()));
+        MjpegServer server = null;
+        try {
+            server = new MjpegServer(Integer.getInteger("mjpeg",
+                    DEFAULT_PORT), Integer.getInteger("mjpeg.quality",
+                    MjpegServer.DEFAULT_QUALITY), null);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Unable to start MJPEG preview", e);
+            source.release();
+            return;
+        }
+        // Live sources pace themselves, others are paced to fps
+        double paceFps = FrameIO.fps(source);
+        if (source.isLive()) {
+            paceFps = 0;
+        }
+        final FrameGrabber frameGrabber = new FrameGrabber(source, paceFps);
+        final long startTime = System.currentTimeMillis();
+        frameGrabber.start();
+        try {
+            FrameGrabber.Frame frame = frameGrabber.next();
+            while (frame != null) {
+                server.write(frame.getMat());
+                frame = frameGrabber.next();
+            }
+            frameGrabber.stop();
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Preview interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Free native memory
+            server.release();
+            frameGrabber.release();
+            source.release();
+        }
+        final long estimatedTime = System.currentTimeMillis() - startTime;
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
+                (double) estimatedTime / 1000));
+        // CHECKSTYLE:ON MagicNumber
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on April 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves frames written to it as MJPEG over HTTP with the JDK's built-in
+ * server, so pipelines can be watched from a browser on headless machines.
+ * http://host:port/ is a page showing the stream and http://host:port/stream
+ * is the stream itself.
+ *
+ * Each frame is encoded to JPEG once, no matter how many viewers there are,
+ * and nothing is encoded while nobody is watching. Encoded frames are kept in
+ * a small set of reusable buffers, one per viewer plus the newest frame, and
+ * every viewer sends the same bytes on its own thread. A viewer always sends
+ * the newest frame next, so a slow viewer skips frames instead of holding up
+ * write or the other viewers.
+ *
+ * Frames are also passed on to another sink if one is given.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MjpegServer implements FrameSink {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(MjpegServer.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+
+    /**
+     * Encoded frame shared by viewers.
+     */
+    private static final class Jpeg {
+        /**
+         * JPEG bytes. Grows to largest frame.
+         */
+        private byte[] data = new byte[0];
+        /**
+         * Bytes of data used.
+         */
+        private int length;
+        /**
+         * Frame number, starting at 1.
+         */
+        private long sequence;
+        /**
+         * Viewers sending this frame, plus one while it is being filled.
+         */
+        private final AtomicInteger references = new AtomicInteger();
+    }
+
+    /**
+     * Default JPEG quality.
+     */
+    public static final int DEFAULT_QUALITY = 80;
+    /**
+     * Multipart boundary.
+     */
+    private static final String BOUNDARY = "frame";
+    /**
+     * Part header format with one %d for JPEG length.
+     */
+    private static final String PART_HEADER = "--" + BOUNDARY
+            + "\r\nContent-Type: image/jpeg\r\nContent-Length: %d\r\n\r\n";
+    /**
+     * Part trailer.
+     */
+    private static final byte[] PART_TRAILER = "\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Page showing the stream.
+     */
+    private static final byte[] PAGE = ("<html><head><title>Preview</title>"
+            + "</head><body><img src=\"/stream\"></body></html>")
+            .getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Sink frames are passed on to or null for none.
+     */
+    private final FrameSink sink;
+    /**
+     * HTTP server.
+     */
+    private final HttpServer server;
+    /**
+     * Runs one viewer per thread.
+     */
+    private final ExecutorService executor;
+    /**
+     * Encoder output.
+     */
+    private final MatOfByte encoded = new MatOfByte();
+    /**
+     * Encoder parameters.
+     */
+    private final MatOfInt params;
+    /**
+     * Guards jpegs and latest, and is notified when a frame is published.
+     */
+    private final Object lock = new Object();
+    /**
+     * Every encoded frame buffer.
+     */
+    private final List<Jpeg> jpegs = new ArrayList<Jpeg>();
+    /**
+     * Newest encoded frame or null before the first.
+     */
+    private Jpeg latest;
+    /**
+     * Frames encoded.
+     */
+    private long sequence;
+    /**
+     * Connected viewers.
+     */
+    private final AtomicInteger viewers = new AtomicInteger();
+    /**
+     * Frames skipped by viewers that were still sending an older frame.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Set false to disconnect viewers.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Start server.
+     *
+     * @param port
+     *            Port to listen on.
+     * @param quality
+     *            JPEG quality 0 to 100.
+     * @param sink
+     *            Sink frames are passed on to or null for none.
+     * @throws IOException
+     *             If port cannot be bound.
+     */
+    MjpegServer(final int port, final int quality, final FrameSink sink)
+            throws IOException {
+        this.sink = sink;
+        params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "mjpeg-" + port);
+                // Viewers must not keep the JVM alive
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/stream", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) {
+                stream(exchange);
+            }
+        });
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                    throws IOException {
+                exchange.getResponseHeaders().set("Content-Type",
+                        "text/html");
+                exchange.sendResponseHeaders(200, PAGE.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(PAGE);
+                out.close();
+            }
+        });
+        server.start();
+        logger.log(Level.INFO, String.format("MJPEG preview on http://%s:%d/",
+                server.getAddress().getHostString(), port));
+    }
+
+    /**
+     * Encode frame once and make it the newest frame for all viewers. Skipped
+     * when nobody is watching. Never waits for viewers.
+     *
+     * @param mat
+     *            Frame.
+     */
+    @Override
+    public void write(final Mat mat) {
+        if (viewers.get() > 0) {
+            Imgcodecs.imencode(".jpg", mat, encoded, params);
+            final int length = (int) encoded.total();
+            final Jpeg jpeg = free();
+            if (jpeg.data.length < length) {
+                jpeg.data = new byte[length];
+            }
+            // Single copy from native memory, shared by every viewer
+            encoded.get(0, 0, jpeg.data);
+            jpeg.length = length;
+            synchronized (lock) {
+                jpeg.sequence = ++sequence;
+                latest = jpeg;
+                lock.notifyAll();
+            }
+            jpeg.references.decrementAndGet();
+        }
+        if (sink != null) {
+            sink.write(mat);
+        }
+    }
+
+    /**
+     * Get a buffer no viewer is sending and that is not the newest frame.
+     * There are at most viewers + 2 buffers, since each viewer holds one.
+     *
+     * @return Buffer reserved for filling.
+     */
+    private Jpeg free() {
+        synchronized (lock) {
+            for (Jpeg jpeg : jpegs) {
+                if (jpeg != latest && jpeg.references.get() == 0) {
+                    jpeg.references.set(1);
+                    return jpeg;
+                }
+            }
+            final Jpeg jpeg = new Jpeg();
+            jpeg.references.set(1);
+            jpegs.add(jpeg);
+            return jpeg;
+        }
+    }
+
+    /**
+     * Wait for a frame newer than the one last sent.
+     *
+     * @param sent
+     *            Sequence of frame last sent or 0.
+     * @return Newest frame with a reference held or null if stopped.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    private Jpeg next(final long sent) throws InterruptedException {
+        synchronized (lock) {
+            while (running && (latest == null || latest.sequence == sent)) {
+                lock.wait();
+            }
+            if (!running) {
+                return null;
+            }
+            latest.references.incrementAndGet();
+            return latest;
+        }
+    }
+
+    /**
+     * Send newest frames to one viewer until it disconnects or the server
+     * stops.
+     *
+     * @param exchange
+     *            Viewer's request.
+     */
+    private void stream(final HttpExchange exchange) {
+        viewers.incrementAndGet();
+        try {
+            exchange.getResponseHeaders().set("Content-Type",
+                    "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            // Chunked, since the stream has no length
+            exchange.sendResponseHeaders(200, 0);
+            final OutputStream out = exchange.getResponseBody();
+            long sent = 0;
+            Jpeg jpeg = next(sent);
+            while (jpeg != null) {
+                try {
+                    if (sent > 0) {
+                        dropped.addAndGet(jpeg.sequence - sent - 1);
+                    }
+                    sent = jpeg.sequence;
+                    out.write(String.format(PART_HEADER, jpeg.length)
+                            .getBytes(StandardCharsets.US_ASCII));
+                    out.write(jpeg.data, 0, jpeg.length);
+                    out.write(PART_TRAILER);
+                    out.flush();
+                } finally {
+                    jpeg.references.decrementAndGet();
+                }
+                jpeg = next(sent);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Viewer disconnected", e);
+        } catch (InterruptedException e) {
+            logger.log(Level.FINE, "Viewer interrupted");
+        } finally {
+            viewers.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Connected viewers.
+     *
+     * @return Viewer count.
+     */
+    public int getViewers() {
+        return viewers.get();
+    }
+
+    /**
+     * Frames encoded.
+     *
+     * @return Frame count.
+     */
+    public long getEncoded() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Frames skipped by viewers that were still sending an older frame,
+     * summed over viewers.
+     *
+     * @return Dropped frame count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Disconnect viewers, stop server, free native memory and release the
+     * sink frames are passed on to.
+     */
+    @Override
+    public void release() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        logger.log(Level.INFO, String.format(
+                "MJPEG preview: %d frames encoded, %d dropped by viewers",
+                getEncoded(), getDropped()));
+        encoded.release();
+        encoded.delete();
+        params.release();
+        params.delete();
+        if (sink != null) {
+            sink.release();
+        }
+    }
+}
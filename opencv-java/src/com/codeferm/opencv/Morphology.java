@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Dilate then erode stage {@link MotionDetector} runs on the foreground mask
+ * before finding boxes. MotionDetector always used a 3x3 cross kernel
+ * (getStructuringElement is passed MORPH_DILATE, which has the same value as
+ * MORPH_CROSS), so n iterations grow or shrink regions by every pixel within
+ * city block (L1) distance n. Implementations must give the same mask pixel
+ * for pixel, with pixels outside the frame ignored like OpenCV's default
+ * border.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface Morphology {
+    /**
+     * Dilate then erode mask in place.
+     *
+     * @param mask
+     *            Single channel mask, 255 for foreground and 0 for background.
+     */
+    void apply(Mat mask);
+
+    /**
+     * Release native memory held by morphology.
+     */
+    void release();
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Checks every {@link Morphology} pixel for pixel against the iterated 3x3
+ * kernel MotionDetector has always used. Foreground masks come from the
+ * running average at full resolution, so they are the masks MotionDetector
+ * would run morphology on. Logs time per frame, frames that differ and total
+ * differing pixels for each implementation. Anything other than 0 differing
+ * pixels means the implementation must not be used.
+ *
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" if no args passed.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MorphologyCheck {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF This is not a constant, so naming convenetion is correct
+    private static final Logger logger = Logger.getLogger(MorphologyCheck.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Implementations checked. The first one is the reference.
+     */
+    private static final String[] METHODS = {"iterated", "distance",
+            "packed" };
+    /**
+     * Blur kernel size, same as MotionDetector at full resolution.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final Size K_SIZE = new Size(8, 8);
+    // CHECKSTYLE:ON MagicNumber
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private MorphologyCheck() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Check implementations.
+     *
+     * args[0] = source file or will default to "../resources/traffic.mp4" if no
+     * args passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String url = null;
+        // Check how many arguments were passed in
+        if (args.length == 0) {
+            url = "../resources/traffic.mp4";
+        } else {
+            url = args[0];
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    MorphologyCheck.class.getClassLoader()
+                            .getResourceAsStream("logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("Input file: %s", url));
+        final FrameSource source = FrameIO.source(url);
+        final BackgroundModel model = new RunningAverageModel();
+        final Morphology[] morphologies = new Morphology[METHODS.length];
+        final Mat[] results = new Mat[METHODS.length];
+        for (int i = 0; i < METHODS.length; i++) {
+            morphologies[i] = MotionDetector.createMorphology(METHODS[i],
+                    MotionDetector.DILATE_ITERATIONS,
+                    MotionDetector.ERODE_ITERATIONS);
+            results[i] = new Mat();
+        }
+        final long[] nanos = new long[METHODS.length];
+        final int[] framesDiffering = new int[METHODS.length];
+        final long[] pixelsDiffering = new long[METHODS.length];
+        final Mat mat = new Mat();
+        final Mat workImg = new Mat();
+        final Mat mask = new Mat();
+        final Mat difference = new Mat();
+        int frames = 0;
+        while (source.read(mat)) {
+            Imgproc.blur(mat, workImg, K_SIZE);
+            model.apply(workImg, mask);
+            for (int i = 0; i < METHODS.length; i++) {
+                mask.copyTo(results[i]);
+                final long start = System.nanoTime();
+                morphologies[i].apply(results[i]);
+                nanos[i] += System.nanoTime() - start;
+                Core.bitwise_xor(results[0], results[i], difference);
+                final int differing = Core.countNonZero(difference);
+                if (differing > 0) {
+                    framesDiffering[i]++;
+                    pixelsDiffering[i] += differing;
+                }
+            }
+            frames++;
+        }
+        for (int i = 0; i < METHODS.length; i++) {
+            logger.log(Level.INFO, String.format(
+                    "%-8s %6.3f ms/frame, %d of %d frames differ, "
+                            + "%d pixels differ", METHODS[i],
+                    (double) TimeUnit.NANOSECONDS.toMicros(nanos[i]
+                            / Math.max(1, frames))
+                            / TimeUnit.MILLISECONDS.toMicros(1),
+                    framesDiffering[i], frames, pixelsDiffering[i]));
+        }
+        // Free native memory
+        for (int i = 0; i < METHODS.length; i++) {
+            morphologies[i].release();
+            results[i].release();
+            results[i].delete();
+        }
+        model.release();
+        mat.release();
+        mat.delete();
+        workImg.release();
+        workImg.delete();
+        mask.release();
+        mask.delete();
+        difference.release();
+        difference.delete();
+        source.release();
+    }
+}
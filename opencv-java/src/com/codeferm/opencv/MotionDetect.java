@@ -7,30 +7,48 @@
 package com.codeferm.opencv;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.Point;
 import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.VideoWriter;
-import org.opencv.videoio.Videoio;
 
 /**
- * Uses moving average to determine change percent.
+ * Uses moving average to determine change percent. Decode, motion detection
+ * and encode run as a three stage {@link Pipeline}.
  *
- * args[0] = source file or will default to "../resources/traffic.mp4" if no
- * args passed.
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" if no args passed.
+ *
+ * -Devents=true only records clips around motion instead of every frame.
+ * -Dpreroll=s and -Dpostroll=s set seconds recorded before motion starts and
+ * after it stops (default 5).
+ *
+ * -Dpyramid=n runs motion analysis n pyramid levels down (each level halves
+ * width and height). Rectangles are drawn at full resolution.
+ *
+ * -Dbackground=average|integer|mog2|knn picks the {@link BackgroundModel}
+ * (default average). -Dgrid=n estimates motion from every nth pixel first and
+ * skips the full mask, count and morphology on quiet frames.
+ * -Dmorphology=iterated|distance|packed picks the {@link Morphology} that
+ * joins foreground into regions (default iterated). All give the same boxes.
+ * -Dcomponents=true finds boxes with connected components instead of
+ * findContours. It creates no objects per frame, but boxes of holes nested
+ * inside a region are no longer drawn.
+ * -Dgrayscale=true analyzes grayscale frames, so pyramid, blur and background
+ * model work on one channel.
+ *
+ * -Danalytics=true skips drawing and encoding and only writes results, except
+ * every -Dsample=n frames.
+ *
+ * -Dresults=true writes motion boxes and percent per frame to NDJSON (see
+ * {@link FrameIO}).
+ *
+ * -Dtrack=true gives each moving object a stable ID with {@link Tracker} and
+ * draws its path, so objects are counted per ID instead of per frame.
  *
  * @author sgoldsmith
  * @version 1.0.0
@@ -49,18 +67,23 @@ final class MotionDetect {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
     }
     /**
-     * Kernel used for contours.
+     * Event clip file name format.
+     */
+    private static final String EVENT_FILE =
+            "../output/motion-event-java-%d.avi";
+    /**
+     * Output codec.
      */
-    private static final Mat CONTOUR_KERNEL = Imgproc.getStructuringElement(
-            Imgproc.MORPH_DILATE, new Size(3, 3), new Point(1, 1));
+    private static final String FOURCC = "DIVX";
     /**
-     * Contour hierarchy.
+     * Default pre-roll and post-roll seconds.
      */
-    private static final Mat HIERARCHY = new Mat();
+    private static final int DEFAULT_ROLL = 5;
     /**
-     * Point used for contour dilate and erode.
+     * Result file name format.
      */
-    private static final Point CONTOUR_POINT = new Point(-1, -1);
+    private static final String RESULTS_FILE =
+            "../output/motion-detect-java-%d.ndjson";
 
     /**
      * Suppress default constructor for noninstantiability.
@@ -69,32 +92,6 @@ final class MotionDetect {
         throw new AssertionError();
     }
 
-    /**
-     * Get contours from image.
-     *
-     * @param source
-     *            Source image.
-     * @return List of rectangles.
-     */
-    public static List<Rect> contours(final Mat source) {
-        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
-        Imgproc.dilate(source, source, CONTOUR_KERNEL, CONTOUR_POINT, 15);
-        Imgproc.erode(source, source, CONTOUR_KERNEL, CONTOUR_POINT, 10);
-        // CHECKSTYLE:ON MagicNumber
-        final List<MatOfPoint> contoursList = new ArrayList<MatOfPoint>();
-        Imgproc.findContours(source, contoursList, HIERARCHY,
-                Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
-        List<Rect> rectList = new ArrayList<Rect>();
-        // Convert MatOfPoint to Rectangles
-        for (MatOfPoint mop : contoursList) {
-            rectList.add(Imgproc.boundingRect(mop));
-            // Release native memory
-            mop.release();
-            mop.delete();
-        }
-        return rectList;
-    }
-
     /**
      * Create window, frame and set window to visible.
      *
@@ -106,7 +103,8 @@ final class MotionDetect {
      */
     public static void main(final String[] args) {
         String url = null;
-        final String outputFile = "../output/motion-detect-java.avi";
+        final String outputFile = FrameIO
+                .outputFile("../output/motion-detect-java.avi");
         // Check how many arguments were passed in
         if (args.length == 0) {
             // If no arguments were passed then default to
@@ -126,90 +124,135 @@ final class MotionDetect {
         logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
         logger.log(Level.INFO, String.format("Input file: %s", url));
         logger.log(Level.INFO, String.format("Output file: %s", outputFile));
-        VideoCapture videoCapture = new VideoCapture(url);
-        final Size frameSize = new Size(
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+        final FrameSource source = FrameIO.source(url);
+        final Size frameSize = source.getFrameSize();
         logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
-        final FourCC fourCC = new FourCC("DIVX");
-        VideoWriter videoWriter = new VideoWriter(outputFile, fourCC.toInt(),
-                videoCapture.get(Videoio.CAP_PROP_FPS), frameSize, true);
-        final Mat mat = new Mat();
-        int frames = 0;
-        final Mat workImg = new Mat();
-        Mat movingAvgImg = null;
-        final Mat gray = new Mat();
-        final Mat diffImg = new Mat();
-        final Mat scaleImg = new Mat();
-        final Point rectPoint1 = new Point();
-        final Point rectPoint2 = new Point();
-        final Scalar rectColor = new Scalar(0, 255, 0);
-        final Size kSize = new Size(8, 8);
-        final double totalPixels = frameSize.area();
-        double motionPercent = 0.0;
-        int framesWithMotion = 0;
-        final long startTime = System.currentTimeMillis();
-        while (videoCapture.read(mat)) {
-            // Generate work image by blurring
-            Imgproc.blur(mat, workImg, kSize);
-            // Generate moving average image if needed
-            if (movingAvgImg == null) {
-                movingAvgImg = new Mat();
-                workImg.convertTo(movingAvgImg, CvType.CV_32F);
+        final double fps = FrameIO.fps(source);
+        FrameSink sink = null;
+        EventRecorder recorder = null;
+        if (Boolean.getBoolean("events")) {
+            // Only frames around motion are encoded
+            final int preRoll = (int) (fps * Integer.getInteger("preroll",
+                    DEFAULT_ROLL));
+            final int postRoll = (int) (fps * Integer.getInteger("postroll",
+                    DEFAULT_ROLL));
+            recorder = new EventRecorder(EVENT_FILE, new FourCC(System
+                    .getProperty("fourcc", FOURCC)), fps, frameSize, preRoll,
+                    postRoll, Pipeline.DEFAULT_POOL_SIZE);
+            // Clips are written on the pipeline's encode thread
+            sink = recorder;
+        } else {
+            sink = FrameIO.sink(outputFile, FOURCC, source);
+        }
+        final EventRecorder eventRecorder = recorder;
+        final MotionDetector motionDetector = new MotionDetector(frameSize,
+                Integer.getInteger("pyramid", 0), MotionDetector
+                        .createModel(System.getProperty("background",
+                                "average")));
+        motionDetector.setGridStep(Integer.getInteger("grid", 0));
+        motionDetector.setMorphology(System.getProperty("morphology",
+                "iterated"));
+        motionDetector.setConnectedComponents(Boolean
+                .getBoolean("components"));
+        motionDetector.setGrayscale(Boolean.getBoolean("grayscale"));
+        Tracker track = null;
+        if (Boolean.getBoolean("track")) {
+            track = new Tracker();
+        }
+        final Tracker tracker = track;
+        final EventSink eventSink = FrameIO.results(RESULTS_FILE);
+        final Metrics metrics = new Metrics("MotionDetect");
+        // Time detection and drawing separately
+        final FrameProcessor processor = new FrameProcessor() {
+            /**
+             * Frames processed.
+             */
+            private long frames;
 
+            @Override
+            public void process(final Mat mat) {
+                // Event clips need drawing even in analytics mode
+                final boolean draw = FrameIO.isEncoded(frames++)
+                        || eventRecorder != null;
+                long time = System.nanoTime();
+                final int count = motionDetector.detectBoxes(mat);
+                if (tracker == null) {
+                    time = metrics.record(Metrics.Stage.PROCESS, time);
+                    if (draw) {
+                        motionDetector.draw(mat, motionDetector.getBoxes(),
+                                count);
+                    }
+                } else {
+                    final int[] boxes = motionDetector.getBoxes();
+                    final Rect[] rects = new Rect[count];
+                    for (int i = 0; i < count; i++) {
+                        final int j = i * MotionDetector.BOX_INTS;
+                        rects[i] = new Rect(boxes[j], boxes[j + 1],
+                                boxes[j + 2], boxes[j + 3]);
+                    }
+                    tracker.update(rects, null);
+                    time = metrics.record(Metrics.Stage.PROCESS, time);
+                    if (draw) {
+                        tracker.draw(mat);
+                    }
+                }
+                metrics.record(Metrics.Stage.DRAW, time);
+                if (eventSink != null) {
+                    eventSink.record(motionDetector.getFrames(), System
+                            .currentTimeMillis(), motionDetector.getBoxes(),
+                            count, motionDetector.getMotionPercent());
+                }
+                if (eventRecorder != null) {
+                    eventRecorder.motion(motionDetector.isMotion());
+                }
             }
-            // Generate moving average image
-            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
-            Imgproc.accumulateWeighted(workImg, movingAvgImg, .03);
-            // Convert the scale of the moving average
-            Core.convertScaleAbs(movingAvgImg, scaleImg);
-            // Subtract the work image frame from the scaled image average
-            Core.absdiff(workImg, scaleImg, diffImg);
-            // Convert the image to grayscale
-            Imgproc.cvtColor(diffImg, gray, Imgproc.COLOR_BGR2GRAY);
-            // Convert to BW
-            Imgproc.threshold(gray, gray, 25, 255, Imgproc.THRESH_BINARY);
-            // Total number of changed motion pixels
-            motionPercent = 100.0 * Core.countNonZero(gray) / totalPixels;
-            // Detect if camera is adjusting and reset reference if more than
-            // maxChange
-            if (motionPercent > 25.0) {
-                workImg.convertTo(movingAvgImg, CvType.CV_32F);
+
+            @Override
+            public void release() {
+                motionDetector.release();
             }
-            List<Rect> movementLocations = contours(gray);
-            // Threshold trigger motion
-            if (motionPercent > 0.75) {
-                framesWithMotion++;
-                for (Rect rect : movementLocations) {
-                    rectPoint1.x = rect.x;
-                    rectPoint1.y = rect.y;
-                    rectPoint2.x = rect.x + rect.width;
-                    rectPoint2.y = rect.y + rect.height;
-                    // Draw rectangle around fond object
-                    Imgproc.rectangle(mat, rectPoint1, rectPoint2, rectColor, 2);
-                }
+        };
+        final Pipeline pipeline = new Pipeline(source, sink, processor,
+                Pipeline.DEFAULT_POOL_SIZE, metrics);
+        metrics.start();
+        final long startTime = System.currentTimeMillis();
+        try {
+            pipeline.run();
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Pipeline interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Free native memory
+            pipeline.release();
+            processor.release();
+            source.release();
+            if (sink != null) {
+                sink.release();
+            }
+            if (eventSink != null) {
+                eventSink.close();
             }
-            videoWriter.write(mat);
-            frames++;
         }
         final long estimatedTime = System.currentTimeMillis() - startTime;
+        metrics.stop();
         logger.log(Level.INFO, String.format(
-                "%d frames, %d frames with motion", frames, framesWithMotion));
+                "%d frames, %d frames with motion, %d frames estimated",
+                motionDetector.getFrames(),
+                motionDetector.getFramesWithMotion(),
+                motionDetector.getFramesEstimated()));
+        if (tracker != null) {
+            logger.log(Level.INFO, String.format(
+                    "%d objects tracked, %4.2f seconds average dwell",
+                    tracker.getCount(), tracker.getAverageDwell() / fps));
+        }
+        if (eventRecorder != null) {
+            logger.log(Level.INFO, String.format(
+                    "%d events, %d frames recorded", eventRecorder.getClips(),
+                    eventRecorder.getFramesWritten()));
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
         logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
                 (double) estimatedTime / 1000));
         // CHECKSTYLE:ON MagicNumber
-        // Free native memory
-        mat.release();
-        mat.delete();
-        workImg.release();
-        workImg.delete();
-        movingAvgImg.release();
-        movingAvgImg.delete();
-        gray.release();
-        gray.delete();
-        diffImg.release();
-        diffImg.delete();
-        scaleImg.release();
-        scaleImg.delete();
     }
 }
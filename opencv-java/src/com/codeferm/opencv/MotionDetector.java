@@ -0,0 +1,831 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Background subtraction motion detector. The {@link BackgroundModel} turns
+ * each blurred frame into a foreground mask, which defaults to the original
+ * running average, and the {@link Morphology} joins nearby foreground into
+ * regions before boxes are found. All working Mats, including the contour
+ * hierarchy, are owned by the instance's {@link MatPool} or its stages, so
+ * detectors for different streams can run on different threads.
+ *
+ * Boxes come from findContours with RETR_TREE by default. That includes boxes
+ * of hole contours nested inside regions, which are drawn as well.
+ * {@link #setConnectedComponents(boolean)} switches to
+ * connectedComponentsWithStats, which creates no Java objects per frame but
+ * only reports outer regions, so nested boxes are no longer drawn.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MotionDetector implements FrameProcessor {
+    /**
+     * Motion percent that triggers detection.
+     */
+    public static final double TRIGGER_PERCENT = 0.75;
+    /**
+     * Motion percent that resets background model (camera adjusting).
+     */
+    public static final double RESET_PERCENT = 25.0;
+    /**
+     * Fraction of trigger a grid estimate must reach before the full mask is
+     * built. Leaves room for sampling error, so estimates below it are far
+     * enough from the trigger to give the same decision as a full count.
+     */
+    public static final double ESTIMATE_MARGIN = 0.5;
+    /**
+     * Dilate iterations at full resolution.
+     */
+    public static final int DILATE_ITERATIONS = 15;
+    /**
+     * Erode iterations at full resolution.
+     */
+    public static final int ERODE_ITERATIONS = 10;
+    /**
+     * Blur kernel size at full resolution.
+     */
+    private static final int BLUR_SIZE = 8;
+    /**
+     * Ints per box in box buffers (x, y, width, height).
+     */
+    public static final int BOX_INTS = 4;
+    /**
+     * Columns in connected component stats (x, y, width, height, area).
+     */
+    private static final int STATS_COLS = 5;
+    /**
+     * Boxes the internal buffer holds before growing.
+     */
+    private static final int INITIAL_BOXES = 64;
+    /**
+     * Owns all working Mats.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Dilate and erode stage.
+     */
+    private Morphology morphology;
+    /**
+     * Contour hierarchy.
+     */
+    private final Mat hierarchy = pool.acquire();
+    /**
+     * Connected component labels.
+     */
+    private final Mat labels = pool.acquire();
+    /**
+     * Connected component stats.
+     */
+    private final Mat stats = pool.acquire();
+    /**
+     * Connected component centroids.
+     */
+    private final Mat centroids = pool.acquire();
+    /**
+     * Stats copied out of native memory, or contour boxes in the same layout.
+     * Grows to largest component count.
+     */
+    private int[] statsBuffer = new int[0];
+    /**
+     * Contours reused by the findContours box path.
+     */
+    private final List<MatOfPoint> contoursList = new ArrayList<MatOfPoint>();
+    /**
+     * Use connected components instead of findContours for box buffers.
+     */
+    private boolean connectedComponents;
+    /**
+     * Boxes used by process. Grows to largest box count.
+     */
+    private int[] boxes = new int[INITIAL_BOXES * BOX_INTS];
+    /**
+     * Work image.
+     */
+    private final Mat workImg = pool.acquire();
+    /**
+     * Foreground mask.
+     */
+    private final Mat gray = pool.acquire();
+    /**
+     * Background model.
+     */
+    private final BackgroundModel model;
+    /**
+     * Pyramid levels below frame, each half the size of the one above.
+     */
+    private final Mat[] pyramid;
+    /**
+     * Pyramid levels between frame and analysis image.
+     */
+    private final int levels;
+    /**
+     * Analysis image to frame scale (2^levels).
+     */
+    private final int scale;
+    /**
+     * Blur kernel size at analysis scale.
+     */
+    private final Size kSize;
+    /**
+     * Grayscale frame when analyzing grayscale.
+     */
+    private final Mat grayFrame = pool.acquire();
+    /**
+     * Blur kernel width and height at analysis scale.
+     */
+    private final int blurSize;
+    /**
+     * Blurred analysis image in a shared {@link FrameCache}.
+     */
+    private FrameCache.Key workKey;
+    /**
+     * Analyze grayscale instead of BGR frames.
+     */
+    private boolean grayscale;
+    /**
+     * Dilate iterations at analysis scale.
+     */
+    private final int dilateIterations;
+    /**
+     * Erode iterations at analysis scale.
+     */
+    private final int erodeIterations;
+    /**
+     * Rectangle color.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private final Scalar rectColor = new Scalar(0, 255, 0);
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Rectangle top left.
+     */
+    private final Point rectPoint1 = new Point();
+    /**
+     * Rectangle bottom right.
+     */
+    private final Point rectPoint2 = new Point();
+    /**
+     * Total pixels in analysis image.
+     */
+    private final double totalPixels;
+    /**
+     * Last motion percent.
+     */
+    private double motionPercent;
+    /**
+     * Last frame was above motion trigger.
+     */
+    private boolean motion;
+    /**
+     * Frames processed.
+     */
+    private int frames;
+    /**
+     * Frames with motion.
+     */
+    private int framesWithMotion;
+    /**
+     * Grid step for motion estimate (0 for full count).
+     */
+    private int gridStep;
+    /**
+     * Frames decided by grid estimate alone.
+     */
+    private int framesEstimated;
+
+    /**
+     * Create detector for frame size that analyzes at full resolution.
+     *
+     * @param frameSize
+     *            Frame size.
+     */
+    MotionDetector(final Size frameSize) {
+        this(frameSize, 0);
+    }
+
+    /**
+     * Create detector for frame size that analyzes a pyramid downscaled
+     * frame with a running average background.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param levels
+     *            Pyramid levels (0 for full resolution).
+     */
+    MotionDetector(final Size frameSize, final int levels) {
+        this(frameSize, levels, new RunningAverageModel());
+    }
+
+    /**
+     * Create detector for frame size that analyzes a pyramid downscaled
+     * frame. Each level halves width and height, so blur, background model
+     * and morphology cost about a quarter as much per level. Blur size and
+     * morphology iterations are scaled too, so regions cover the same part
+     * of the frame and motion percent stays comparable. Boxes are mapped back
+     * to frame coordinates.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param levels
+     *            Pyramid levels (0 for full resolution).
+     * @param model
+     *            Background model, released with the detector.
+     */
+    MotionDetector(final Size frameSize, final int levels,
+            final BackgroundModel model) {
+        if (levels < 0) {
+            throw new IllegalArgumentException(
+                    "Pyramid levels must not be negative");
+        }
+        this.levels = levels;
+        this.model = model;
+        scale = 1 << levels;
+        double width = frameSize.width;
+        double height = frameSize.height;
+        // pyrDown rounds odd sizes up
+        for (int i = 0; i < levels; i++) {
+            width = Math.ceil(width / 2);
+            height = Math.ceil(height / 2);
+        }
+        totalPixels = width * height;
+        pyramid = new Mat[levels];
+        for (int i = 0; i < levels; i++) {
+            pyramid[i] = pool.acquire();
+        }
+        blurSize = Math.max(1, BLUR_SIZE / scale);
+        kSize = new Size(blurSize, blurSize);
+        workKey = workKey(FrameCache.FRAME);
+        dilateIterations = Math.max(1, DILATE_ITERATIONS / scale);
+        erodeIterations = Math.max(1, ERODE_ITERATIONS / scale);
+        morphology = new IteratedMorphology(dilateIterations,
+                erodeIterations);
+    }
+
+    /**
+     * Create background model.
+     *
+     * @param name
+     *            "average" for the CV_32F running average, "integer" for the
+     *            16 bit fixed point running average, "mog2" or "knn" for
+     *            OpenCV subtractors.
+     * @return Background model.
+     */
+    public static BackgroundModel createModel(final String name) {
+        BackgroundModel model = null;
+        if ("average".equals(name)) {
+            model = new RunningAverageModel();
+        } else if ("integer".equals(name)) {
+            model = new IntegerAverageModel();
+        } else if ("mog2".equals(name)) {
+            model = SubtractorModel.mog2();
+        } else if ("knn".equals(name)) {
+            model = SubtractorModel.knn();
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unknown background model %s", name));
+        }
+        return model;
+    }
+
+    /**
+     * Create dilate and erode stage.
+     *
+     * @param name
+     *            "iterated" for repeated 3x3 kernel passes, "distance" for
+     *            one L1 distance transform per operation or "packed" for
+     *            iterations on a bit-packed mask.
+     * @param dilateIterations
+     *            Dilate iterations.
+     * @param erodeIterations
+     *            Erode iterations.
+     * @return Morphology.
+     */
+    public static Morphology createMorphology(final String name,
+            final int dilateIterations, final int erodeIterations) {
+        Morphology morphology = null;
+        if ("iterated".equals(name)) {
+            morphology = new IteratedMorphology(dilateIterations,
+                    erodeIterations);
+        } else if ("distance".equals(name)) {
+            morphology = new DistanceMorphology(dilateIterations,
+                    erodeIterations);
+        } else if ("packed".equals(name)) {
+            morphology = new PackedMorphology(dilateIterations,
+                    erodeIterations);
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unknown morphology %s", name));
+        }
+        return morphology;
+    }
+
+    /**
+     * Replace dilate and erode stage. All implementations give the same mask,
+     * so this only changes cost.
+     *
+     * @param name
+     *            See {@link #createMorphology(String, int, int)}.
+     */
+    public void setMorphology(final String name) {
+        final Morphology newMorphology = createMorphology(name,
+                dilateIterations, erodeIterations);
+        morphology.release();
+        morphology = newMorphology;
+    }
+
+    /**
+     * Cache key of blurred analysis image.
+     *
+     * @param input
+     *            Full resolution image pyramid starts from.
+     * @return Key.
+     */
+    private FrameCache.Key workKey(final FrameCache.Key input) {
+        FrameCache.Key key = input;
+        for (int i = 0; i < levels; i++) {
+            key = FrameCache.pyrDown(key);
+        }
+        return FrameCache.blur(key, blurSize);
+    }
+
+    /**
+     * Convert frames to grayscale before pyramid and blur. Pyramid, blur and
+     * background model then work on one channel instead of three, and with
+     * a {@link FrameCache} the grayscale frame is shared with analyzers such
+     * as {@link EdgeDetector}. The mask is the thresholded difference of gray
+     * images instead of the gray of the BGR difference, so a change in color
+     * alone at the same brightness is not seen. Call before the first frame.
+     *
+     * @param grayscale
+     *            True to analyze grayscale frames.
+     */
+    public void setGrayscale(final boolean grayscale) {
+        this.grayscale = grayscale;
+        if (grayscale) {
+            workKey = workKey(FrameCache.gray(FrameCache.FRAME));
+        } else {
+            workKey = workKey(FrameCache.FRAME);
+        }
+    }
+
+    /**
+     * Find box buffers with connectedComponentsWithStats instead of
+     * findContours. No Java objects are created per frame, but only outer
+     * regions are reported, so the boxes of holes nested inside a region
+     * that findContours with RETR_TREE returns are dropped and the drawn
+     * output changes. Off by default.
+     *
+     * @param connectedComponents
+     *            True to use connected components.
+     */
+    public void setConnectedComponents(final boolean connectedComponents) {
+        this.connectedComponents = connectedComponents;
+    }
+
+    /**
+     * Estimate motion percent from a sparse grid before building the full
+     * mask. Frames whose estimate is below {@link #ESTIMATE_MARGIN} of the
+     * trigger skip the full difference, threshold, count and morphology, and
+     * report the estimate as motion percent. Others are counted exactly, so
+     * trigger and reset decisions are unchanged unless sampling misses more
+     * than half the changed pixels. Models that cannot sample count every
+     * pixel.
+     *
+     * @param step
+     *            Grid step in pixels (0 or 1 for full count).
+     */
+    public void setGridStep(final int step) {
+        if (step < 0) {
+            throw new IllegalArgumentException(
+                    "Grid step must not be negative");
+        }
+        gridStep = step;
+    }
+
+    /**
+     * Get contours from image.
+     *
+     * @param source
+     *            Source image.
+     * @return List of rectangles.
+     */
+    public List<Rect> contours(final Mat source) {
+        morphology.apply(source);
+        final List<MatOfPoint> contoursList = new ArrayList<MatOfPoint>();
+        Imgproc.findContours(source, contoursList, hierarchy,
+                Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+        List<Rect> rectList = new ArrayList<Rect>();
+        // Convert MatOfPoint to Rectangles
+        for (MatOfPoint mop : contoursList) {
+            rectList.add(Imgproc.boundingRect(mop));
+            // Release native memory
+            mop.release();
+            mop.delete();
+        }
+        return rectList;
+    }
+
+    /**
+     * Get bounding boxes of contours from image. Boxes are written as x, y,
+     * width, height. If there are more boxes than fit, only the first
+     * boxes.length / 4 are written and the rest can be copied with
+     * {@link #copyBoxes(int[], int)} after growing the buffer.
+     *
+     * By default boxes are the same as {@link #contours(Mat)}, including
+     * nested hole contours. With {@link #setConnectedComponents(boolean)}
+     * only outer regions are reported and no Java objects are created.
+     *
+     * @param source
+     *            Source image. Modified in place.
+     * @param boxes
+     *            Caller supplied box buffer.
+     * @return Number of boxes found.
+     */
+    public int contours(final Mat source, final int[] boxes) {
+        morphology.apply(source);
+        if (!connectedComponents) {
+            return contourBoxes(source, boxes);
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final int count = Imgproc.connectedComponentsWithStats(source, labels,
+                stats, centroids, 8, CvType.CV_32S);
+        // CHECKSTYLE:ON MagicNumber
+        if (statsBuffer.length < count * STATS_COLS) {
+            statsBuffer = new int[count * STATS_COLS];
+        }
+        stats.get(0, 0, statsBuffer);
+        // Label 0 is background
+        final int found = count - 1;
+        copyBoxes(boxes, found);
+        return found;
+    }
+
+    /**
+     * Get boxes with findContours and RETR_TREE, same as
+     * {@link #contours(Mat)}, and keep them in statsBuffer's layout so
+     * {@link #copyBoxes(int[], int)} works for both paths.
+     *
+     * @param source
+     *            Source image after morphology. Modified in place.
+     * @param boxes
+     *            Caller supplied box buffer.
+     * @return Number of boxes found.
+     */
+    private int contourBoxes(final Mat source, final int[] boxes) {
+        contoursList.clear();
+        Imgproc.findContours(source, contoursList, hierarchy,
+                Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+        final int found = contoursList.size();
+        // Slot 0 is left unused like the background label
+        if (statsBuffer.length < (found + 1) * STATS_COLS) {
+            statsBuffer = new int[(found + 1) * STATS_COLS];
+        }
+        for (int i = 0; i < found; i++) {
+            final MatOfPoint mop = contoursList.get(i);
+            final Rect rect = Imgproc.boundingRect(mop);
+            final int j = (i + 1) * STATS_COLS;
+            statsBuffer[j] = rect.x;
+            statsBuffer[j + 1] = rect.y;
+            statsBuffer[j + 2] = rect.width;
+            statsBuffer[j + 3] = rect.height;
+            // Release native memory
+            mop.release();
+            mop.delete();
+        }
+        contoursList.clear();
+        copyBoxes(boxes, found);
+        return found;
+    }
+
+    /**
+     * Copy boxes from last {@link #contours(Mat, int[])} call.
+     *
+     * @param boxes
+     *            Box buffer.
+     * @param count
+     *            Number of boxes found.
+     * @return Number of boxes copied.
+     */
+    public int copyBoxes(final int[] boxes, final int count) {
+        final int copied = Math.min(count, boxes.length / BOX_INTS);
+        for (int i = 0; i < copied; i++) {
+            System.arraycopy(statsBuffer, (i + 1) * STATS_COLS, boxes, i
+                    * BOX_INTS, BOX_INTS);
+        }
+        return copied;
+    }
+
+    /**
+     * Update background model with frame and leave foreground mask in gray.
+     *
+     * @param mat
+     *            Frame.
+     * @return True if motion is above trigger.
+     */
+    private boolean update(final Mat mat) {
+        Mat source = mat;
+        if (grayscale) {
+            Imgproc.cvtColor(mat, grayFrame, Imgproc.COLOR_BGR2GRAY);
+            source = grayFrame;
+        }
+        if (levels > 0) {
+            // Gaussian pyramid keeps small objects better than decimation
+            for (Mat level : pyramid) {
+                Imgproc.pyrDown(source, level);
+                source = level;
+            }
+        }
+        // Generate work image by blurring
+        Imgproc.blur(source, workImg, kSize);
+        return analyze(workImg);
+    }
+
+    /**
+     * Update background model with blurred analysis image and leave
+     * foreground mask in gray.
+     *
+     * @param work
+     *            Blurred analysis image. Not modified.
+     * @return True if motion is above trigger.
+     */
+    private boolean analyze(final Mat work) {
+        frames++;
+        if (gridStep > 1) {
+            // Quiet frames stop at the estimate
+            motionPercent = model.estimate(work, gridStep);
+            if (motionPercent < TRIGGER_PERCENT * ESTIMATE_MARGIN) {
+                framesEstimated++;
+                motion = false;
+                return motion;
+            }
+            model.foreground(work, gray);
+        } else {
+            // Foreground mask
+            model.apply(work, gray);
+        }
+        // Total number of changed motion pixels
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        motionPercent = 100.0 * Core.countNonZero(gray) / totalPixels;
+        // CHECKSTYLE:ON MagicNumber
+        // Detect if camera is adjusting and reset reference if more than
+        // maxChange
+        if (motionPercent > RESET_PERCENT) {
+            model.reset(work);
+        }
+        // Threshold trigger motion
+        motion = motionPercent > TRIGGER_PERCENT;
+        if (motion) {
+            framesWithMotion++;
+        }
+        return motion;
+    }
+
+    /**
+     * Update background model with frame and return motion locations.
+     *
+     * @param mat
+     *            Frame.
+     * @return List of rectangles or empty list if motion is below trigger.
+     */
+    public List<Rect> detect(final Mat mat) {
+        if (update(mat)) {
+            final List<Rect> rects = contours(gray);
+            if (scale > 1) {
+                for (Rect rect : rects) {
+                    rect.x *= scale;
+                    rect.y *= scale;
+                    rect.width *= scale;
+                    rect.height *= scale;
+                }
+            }
+            return rects;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Update background model with frame and write motion boxes to caller
+     * supplied buffer. See {@link #contours(Mat, int[])} for buffer layout.
+     *
+     * @param mat
+     *            Frame.
+     * @param boxes
+     *            Caller supplied box buffer.
+     * @return Number of boxes found or zero if motion is below trigger.
+     */
+    public int detect(final Mat mat, final int[] boxes) {
+        return boxes(update(mat), boxes);
+    }
+
+    /**
+     * Find boxes in foreground mask if there was motion.
+     *
+     * @param found
+     *            True if motion is above trigger.
+     * @param boxes
+     *            Caller supplied box buffer.
+     * @return Number of boxes found or zero if motion is below trigger.
+     */
+    private int boxes(final boolean found, final int[] boxes) {
+        if (found) {
+            final int count = contours(gray, boxes);
+            scaleBoxes(boxes, Math.min(count, boxes.length / BOX_INTS));
+            return count;
+        }
+        return 0;
+    }
+
+    /**
+     * Map boxes from analysis image to frame coordinates.
+     *
+     * @param boxes
+     *            Box buffer.
+     * @param count
+     *            Number of boxes to map.
+     */
+    private void scaleBoxes(final int[] boxes, final int count) {
+        if (scale > 1) {
+            for (int i = 0; i < count * BOX_INTS; i++) {
+                boxes[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Update background model with frame and write motion boxes to internal
+     * buffer, growing it as needed. Nothing is allocated once the buffer is
+     * large enough.
+     *
+     * @param mat
+     *            Frame.
+     * @return Number of boxes in {@link #getBoxes()}.
+     */
+    public int detectBoxes(final Mat mat) {
+        return growBoxes(detect(mat, boxes));
+    }
+
+    /**
+     * Same as {@link #detectBoxes(Mat)}, but takes the pyramid and blurred
+     * image from a cache shared with other analyzers of the same frame, so
+     * they are only computed once per frame.
+     *
+     * @param cache
+     *            Cache reset with the frame.
+     * @return Number of boxes in {@link #getBoxes()}.
+     */
+    public int detectBoxes(final FrameCache cache) {
+        return growBoxes(boxes(analyze(cache.get(workKey)), boxes));
+    }
+
+    /**
+     * Grow internal box buffer if boxes did not fit and copy them again.
+     *
+     * @param count
+     *            Number of boxes found.
+     * @return Number of boxes found.
+     */
+    private int growBoxes(final int count) {
+        if (count * BOX_INTS > boxes.length) {
+            boxes = new int[count * BOX_INTS];
+            copyBoxes(boxes, count);
+            scaleBoxes(boxes, count);
+        }
+        return count;
+    }
+
+    /**
+     * Box buffer filled by {@link #detectBoxes(Mat)}.
+     *
+     * @return Boxes as x, y, width, height.
+     */
+    public int[] getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Detect motion and draw rectangles around moving objects.
+     *
+     * @param mat
+     *            Frame.
+     */
+    @Override
+    public void process(final Mat mat) {
+        final int count = detectBoxes(mat);
+        draw(mat, boxes, count);
+    }
+
+    /**
+     * Draw rectangles around moving objects.
+     *
+     * @param mat
+     *            Frame to draw on.
+     * @param movementLocations
+     *            Rectangles from detect.
+     */
+    public void draw(final Mat mat, final List<Rect> movementLocations) {
+        for (Rect rect : movementLocations) {
+            rectPoint1.x = rect.x;
+            rectPoint1.y = rect.y;
+            rectPoint2.x = rect.x + rect.width;
+            rectPoint2.y = rect.y + rect.height;
+            // Draw rectangle around fond object
+            Imgproc.rectangle(mat, rectPoint1, rectPoint2, rectColor, 2);
+        }
+    }
+
+    /**
+     * Draw boxes around moving objects.
+     *
+     * @param mat
+     *            Frame to draw on.
+     * @param boxes
+     *            Boxes as x, y, width, height.
+     * @param count
+     *            Number of boxes.
+     */
+    public void draw(final Mat mat, final int[] boxes, final int count) {
+        for (int i = 0; i < count * BOX_INTS; i += BOX_INTS) {
+            rectPoint1.x = boxes[i];
+            rectPoint1.y = boxes[i + 1];
+            rectPoint2.x = boxes[i] + boxes[i + 2];
+            rectPoint2.y = boxes[i + 1] + boxes[i + 3];
+            // Draw rectangle around fond object
+            Imgproc.rectangle(mat, rectPoint1, rectPoint2, rectColor, 2);
+        }
+    }
+
+    /**
+     * Last motion percent.
+     *
+     * @return Motion percent of last frame.
+     */
+    public double getMotionPercent() {
+        return motionPercent;
+    }
+
+    /**
+     * Last frame was above motion trigger.
+     *
+     * @return True if last frame had motion.
+     */
+    public boolean isMotion() {
+        return motion;
+    }
+
+    /**
+     * Frames processed.
+     *
+     * @return Frame count.
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames with motion.
+     *
+     * @return Frames with motion count.
+     */
+    public int getFramesWithMotion() {
+        return framesWithMotion;
+    }
+
+    /**
+     * Frames decided by grid estimate alone.
+     *
+     * @return Frame count.
+     */
+    public int getFramesEstimated() {
+        return framesEstimated;
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        model.release();
+        morphology.release();
+        pool.close();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 23, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.HOGDescriptor;
+
+/**
+ * People detector that runs {@link MotionDetector} first and only runs HOG on
+ * regions with motion. Motion rectangles are grown by half a HOG window on
+ * each side, so a moving limb still gives HOG the whole body, and overlapping
+ * regions are merged before detection. Frames below the motion trigger skip
+ * HOG entirely.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MotionGatedDetector implements PeopleDetector {
+    /**
+     * Intersection over union above which duplicates are merged.
+     */
+    private static final double NMS_THRESHOLD = 0.5;
+    /**
+     * Motion stage.
+     */
+    private final MotionDetector motionDetector;
+    /**
+     * HOG stage.
+     */
+    private final HogDetector hogDetector;
+    /**
+     * HOG window size.
+     */
+    private final Size winSize;
+    /**
+     * ROI locations.
+     */
+    private final MatOfRect roiLocations = new MatOfRect();
+    /**
+     * ROI weights.
+     */
+    private final MatOfDouble roiWeights = new MatOfDouble();
+    /**
+     * Frames where HOG was skipped.
+     */
+    private int skippedFrames;
+
+    /**
+     * Create detector for frame size using default HOG parameters.
+     *
+     * @param frameSize
+     *            Frame size.
+     */
+    MotionGatedDetector(final Size frameSize) {
+        this(frameSize, 0);
+    }
+
+    /**
+     * Create detector for frame size using default HOG parameters and
+     * downscaled motion analysis.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param levels
+     *            Motion analysis pyramid levels (0 for full resolution).
+     */
+    MotionGatedDetector(final Size frameSize, final int levels) {
+        this(frameSize, levels, new RunningAverageModel());
+    }
+
+    /**
+     * Create detector for frame size using default HOG parameters,
+     * downscaled motion analysis and a chosen background model.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param levels
+     *            Motion analysis pyramid levels (0 for full resolution).
+     * @param model
+     *            Background model, released with the detector.
+     */
+    MotionGatedDetector(final Size frameSize, final int levels,
+            final BackgroundModel model) {
+        motionDetector = new MotionDetector(frameSize, levels, model);
+        hogDetector = new HogDetector();
+        final HOGDescriptor hog = hogDetector.getHog();
+        winSize = hog.get_winSize();
+    }
+
+    /**
+     * Grow motion rectangles by half a window on each side, clip to frame and
+     * merge any that overlap.
+     *
+     * @param motion
+     *            Motion rectangles.
+     * @param width
+     *            Frame width.
+     * @param height
+     *            Frame height.
+     * @return Disjoint regions to search.
+     */
+    public List<Rect> regions(final List<Rect> motion, final int width,
+            final int height) {
+        final int growX = (int) winSize.width / 2;
+        final int growY = (int) winSize.height / 2;
+        final List<Rect> regions = new ArrayList<Rect>(motion.size());
+        for (Rect rect : motion) {
+            final int x1 = Math.max(0, rect.x - growX);
+            final int y1 = Math.max(0, rect.y - growY);
+            final int x2 = Math.min(width, rect.x + rect.width + growX);
+            final int y2 = Math.min(height, rect.y + rect.height + growY);
+            regions.add(new Rect(x1, y1, x2 - x1, y2 - y1));
+        }
+        // Merge until no regions overlap
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                for (int j = i + 1; j < regions.size() && !merged; j++) {
+                    final Rect a = regions.get(i);
+                    final Rect b = regions.get(j);
+                    if (a.x < b.x + b.width && b.x < a.x + a.width
+                            && a.y < b.y + b.height && b.y < a.y + a.height) {
+                        final int x1 = Math.min(a.x, b.x);
+                        final int y1 = Math.min(a.y, b.y);
+                        final int x2 = Math.max(a.x + a.width, b.x + b.width);
+                        final int y2 = Math.max(a.y + a.height, b.y
+                                + b.height);
+                        regions.set(i, new Rect(x1, y1, x2 - x1, y2 - y1));
+                        regions.remove(j);
+                        merged = true;
+                    }
+                }
+            }
+        }
+        return regions;
+    }
+
+    @Override
+    public void detect(final Mat mat, final MatOfRect foundLocations,
+            final MatOfDouble foundWeights) {
+        final List<Rect> motion = motionDetector.detect(mat);
+        final List<Rect> rects = new ArrayList<Rect>();
+        final List<Double> weights = new ArrayList<Double>();
+        if (motion.isEmpty()) {
+            skippedFrames++;
+        } else {
+            for (Rect region : regions(motion, mat.width(), mat.height())) {
+                // Regions smaller than the window can not hold a person
+                if (region.width >= winSize.width
+                        && region.height >= winSize.height) {
+                    final Mat roi = mat.submat(region);
+                    hogDetector.detect(roi, roiLocations, roiWeights);
+                    roi.release();
+                    roi.delete();
+                    if (roiLocations.rows() > 0) {
+                        final Rect[] found = roiLocations.toArray();
+                        final double[] foundWeightArray = roiWeights.toArray();
+                        for (int i = 0; i < found.length; i++) {
+                            // Translate to frame coordinates
+                            found[i].x += region.x;
+                            found[i].y += region.y;
+                            rects.add(found[i]);
+                            weights.add(foundWeightArray[i]);
+                        }
+                    }
+                }
+            }
+        }
+        final List<Rect> keptRects = new ArrayList<Rect>(rects.size());
+        final List<Double> keptWeights = new ArrayList<Double>(rects.size());
+        NonMaxSuppression.apply(rects, weights, NMS_THRESHOLD, keptRects,
+                keptWeights);
+        foundLocations.fromList(keptRects);
+        foundWeights.fromList(keptWeights);
+    }
+
+    /**
+     * Motion stage accessor.
+     *
+     * @return Motion detector.
+     */
+    public MotionDetector getMotionDetector() {
+        return motionDetector;
+    }
+
+    /**
+     * Frames where HOG was skipped because motion was below trigger.
+     *
+     * @return Skipped frame count.
+     */
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        roiLocations.release();
+        roiLocations.delete();
+        roiWeights.release();
+        roiWeights.delete();
+        hogDetector.release();
+        motionDetector.release();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 9, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Runs motion detection on many streams in one JVM. Every stream owns its
+ * {@link FrameSource}, {@link FrameSink} and {@link MotionDetector}, so no
+ * Mats are shared between streams. Streams are scheduled one frame at a time
+ * on a fixed worker pool, so a pool smaller than the number of streams still
+ * services every stream fairly.
+ *
+ * args[0..n] = sources (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" and "../resources/walking.mp4" if no args passed.
+ *
+ * -Dthreads=n sets worker pool size or defaults to the number of processors.
+ * -Dpyramid=n runs motion analysis n pyramid levels down.
+ * -Dbackground=average|integer|mog2|knn picks the motion
+ * {@link BackgroundModel} (default average). -Dgrid=n estimates motion from
+ * every nth pixel first and skips the full mask on quiet frames.
+ * -Dmorphology=iterated|distance|packed picks the motion {@link Morphology}
+ * (default iterated).
+ * -Dcomponents=true finds boxes with connected components, which drops
+ * boxes nested inside a region.
+ * -Danalytics=true skips drawing and encoding, except every -Dsample=n
+ * frames, so per stream FPS shows detection cost alone.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class MultiMotionDetect {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger
+            .getLogger(MultiMotionDetect.class.getName()); // NOPMD
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private MultiMotionDetect() {
+        throw new AssertionError();
+    }
+
+    /**
+     * A single stream. Each run processes one frame and resubmits itself until
+     * the source is exhausted, so only one frame per stream is in flight.
+     */
+    private static final class Stream implements Runnable {
+        /**
+         * Stream index.
+         */
+        private final int index;
+        /**
+         * Source URL.
+         */
+        private final String url;
+        /**
+         * Source of frames.
+         */
+        private final FrameSource source;
+        /**
+         * Destination of frames or null.
+         */
+        private final FrameSink sink;
+        /**
+         * Per-stream detector.
+         */
+        private final MotionDetector motionDetector;
+        /**
+         * Per-stream frame buffer.
+         */
+        private final Mat mat = new Mat();
+        /**
+         * Worker pool.
+         */
+        private final ExecutorService executor;
+        /**
+         * Counted down when stream is done.
+         */
+        private final CountDownLatch done;
+        /**
+         * Stage timing shared by all streams.
+         */
+        private final Metrics metrics;
+        /**
+         * Start time in milliseconds.
+         */
+        private long startTime;
+
+        /**
+         * Open source and output.
+         *
+         * @param index
+         *            Stream index.
+         * @param url
+         *            Source URL or camera index.
+         * @param executor
+         *            Worker pool.
+         * @param done
+         *            Counted down when stream is done.
+         * @param metrics
+         *            Stage timing shared by all streams.
+         */
+        Stream(final int index, final String url,
+                final ExecutorService executor, final CountDownLatch done,
+                final Metrics metrics) {
+            this.index = index;
+            this.url = url;
+            this.executor = executor;
+            this.done = done;
+            this.metrics = metrics;
+            source = FrameIO.source(url);
+            final Size frameSize = source.getFrameSize();
+            final String outputFile = String.format(
+                    "../output/motion-detect-java-%d.avi", index);
+            logger.log(Level.INFO, String.format("Stream %d: %s -> %s %s",
+                    index, url, outputFile, frameSize));
+            sink = FrameIO.sink(outputFile, new FourCC("DIVX"), FrameIO
+                    .fps(source), frameSize);
+            motionDetector = new MotionDetector(frameSize,
+                    Integer.getInteger("pyramid", 0), MotionDetector
+                            .createModel(System.getProperty("background",
+                                    "average")));
+            motionDetector.setGridStep(Integer.getInteger("grid", 0));
+            motionDetector.setMorphology(System.getProperty("morphology",
+                    "iterated"));
+            motionDetector.setConnectedComponents(Boolean
+                    .getBoolean("components"));
+        }
+
+        /**
+         * Submit first frame.
+         */
+        public void start() {
+            startTime = System.currentTimeMillis();
+            executor.execute(this);
+        }
+
+        /**
+         * Process one frame and resubmit or finish.
+         */
+        @Override
+        public void run() {
+            boolean more = false;
+            try {
+                long time = System.nanoTime();
+                if (source.read(mat)) {
+                    time = metrics.record(Metrics.Stage.READ, time);
+                    final int count = motionDetector.detectBoxes(mat);
+                    time = metrics.record(Metrics.Stage.PROCESS, time);
+                    // Sink is null when analytics mode encodes nothing
+                    if (sink != null && FrameIO.isEncoded(motionDetector
+                            .getFrames() - 1)) {
+                        motionDetector.draw(mat, motionDetector.getBoxes(),
+                                count);
+                        time = metrics.record(Metrics.Stage.DRAW, time);
+                    }
+                    if (sink != null) {
+                        sink.write(mat);
+                        metrics.record(Metrics.Stage.WRITE, time);
+                    }
+                    more = true;
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE,
+                        String.format("Stream %d failed", index), e);
+            }
+            if (more) {
+                executor.execute(this);
+            } else {
+                finish();
+            }
+        }
+
+        /**
+         * Report FPS and free native memory.
+         */
+        private void finish() {
+            final long estimatedTime = System.currentTimeMillis() - startTime;
+            final int frames = motionDetector.getFrames();
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            logger.log(Level.INFO, String.format(
+                    "Stream %d: %s, %d frames, %d frames with motion, "
+                            + "%4.2f FPS", index, url, frames,
+                    motionDetector.getFramesWithMotion(), frames * 1000.0
+                            / Math.max(estimatedTime, 1)));
+            // CHECKSTYLE:ON MagicNumber
+            motionDetector.release();
+            source.release();
+            if (sink != null) {
+                sink.release();
+            }
+            mat.release();
+            mat.delete();
+            done.countDown();
+        }
+
+        /**
+         * Frames processed.
+         *
+         * @return Frame count.
+         */
+        public int getFrames() {
+            return motionDetector.getFrames();
+        }
+    }
+
+    /**
+     * Run motion detection on all sources.
+     *
+     * args[0..n] = source files, camera indexes or will default to
+     * "../resources/traffic.mp4" and "../resources/walking.mp4" if no args
+     * passed.
+     *
+     * @param args
+     *            String array of arguments.
+     */
+    public static void main(final String[] args) {
+        String[] urls = args;
+        // Check how many arguments were passed in
+        if (urls.length == 0) {
+            // If no arguments were passed then default to local files
+            urls = new String[] {"../resources/traffic.mp4",
+                    "../resources/walking.mp4" };
+        }
+        // Custom logging properties via class loader
+        try {
+            LogManager.getLogManager().readConfiguration(
+                    MultiMotionDetect.class.getClassLoader()
+                            .getResourceAsStream("logging.properties"));
+        } catch (SecurityException | IOException e) {
+            e.printStackTrace();
+        }
+        final int threads = Integer.getInteger("threads", Runtime
+                .getRuntime().availableProcessors());
+        logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
+        logger.log(Level.INFO, String.format("%d streams, %d threads",
+                urls.length, threads));
+        // Parallelism comes from streams, so keep OpenCV from oversubscribing
+        Core.setNumThreads(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(urls.length);
+        final Metrics metrics = new Metrics("MultiMotionDetect");
+        final Stream[] streams = new Stream[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            streams[i] = new Stream(i, urls[i], executor, done, metrics);
+        }
+        metrics.start();
+        final long startTime = System.currentTimeMillis();
+        for (Stream stream : streams) {
+            stream.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+        final long estimatedTime = System.currentTimeMillis() - startTime;
+        executor.shutdown();
+        metrics.stop();
+        int frames = 0;
+        for (Stream stream : streams) {
+            frames += stream.getFrames();
+        }
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        logger.log(Level.INFO, String.format("%d frames, %4.2f FPS aggregate",
+                frames, frames * 1000.0 / Math.max(estimatedTime, 1)));
+        logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
+                (double) estimatedTime / 1000));
+        // CHECKSTYLE:ON MagicNumber
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * Greedy non-maximum suppression. Rectangles are visited in order of
+ * decreasing weight and any rectangle that overlaps a kept rectangle by more
+ * than the threshold is dropped.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class NonMaxSuppression {
+
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private NonMaxSuppression() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Intersection over union of two rectangles.
+     *
+     * @param a
+     *            First rectangle.
+     * @param b
+     *            Second rectangle.
+     * @return Value from 0 (disjoint) to 1 (identical).
+     */
+    public static double iou(final Rect a, final Rect b) {
+        final int x1 = Math.max(a.x, b.x);
+        final int y1 = Math.max(a.y, b.y);
+        final int x2 = Math.min(a.x + a.width, b.x + b.width);
+        final int y2 = Math.min(a.y + a.height, b.y + b.height);
+        if (x2 <= x1 || y2 <= y1) {
+            return 0.0;
+        }
+        final double intersection = (double) (x2 - x1) * (y2 - y1);
+        final double union = (double) a.width * a.height + (double) b.width
+                * b.height - intersection;
+        return intersection / union;
+    }
+
+    /**
+     * Apply non-maximum suppression.
+     *
+     * @param rects
+     *            Candidate rectangles.
+     * @param weights
+     *            Weight of each candidate.
+     * @param threshold
+     *            Maximum intersection over union allowed between kept
+     *            rectangles.
+     * @param keptRects
+     *            Kept rectangles are added here in order of decreasing weight.
+     * @param keptWeights
+     *            Kept weights are added here.
+     */
+    public static void apply(final List<Rect> rects,
+            final List<Double> weights, final double threshold,
+            final List<Rect> keptRects, final List<Double> keptWeights) {
+        final Integer[] order = new Integer[rects.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(weights.get(b), weights.get(a));
+            }
+        });
+        final int first = keptRects.size();
+        for (Integer i : order) {
+            final Rect candidate = rects.get(i);
+            boolean keep = true;
+            for (int j = first; j < keptRects.size() && keep; j++) {
+                keep = iou(candidate, keptRects.get(j)) <= threshold;
+            }
+            if (keep) {
+                keptRects.add(candidate);
+                keptWeights.add(weights.get(i));
+            }
+        }
+    }
+}
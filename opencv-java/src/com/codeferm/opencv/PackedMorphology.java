@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs the cross kernel iterations on a bit-packed copy of the mask. Each row
+ * is packed into longs with pixel x at bit x % 64 of word x / 64, so one
+ * iteration combines a word with its left, right, up and down neighbors using
+ * shifts and OR (dilate) or AND (erode), handling 64 pixels per operation on a
+ * mask an eighth the size. Pixels outside the frame are 0 while dilating and
+ * 1 while eroding, which matches OpenCV's default morphology border.
+ *
+ * The mask is copied out of and back into native memory once per call.
+ * Buffers grow to the largest mask and are reused, so nothing is allocated
+ * once they are large enough.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class PackedMorphology implements Morphology {
+    /**
+     * Pixels per word.
+     */
+    private static final int WORD_BITS = 64;
+    /**
+     * Shift that divides by WORD_BITS.
+     */
+    private static final int WORD_SHIFT = 6;
+    /**
+     * Mask of pixel position within a word.
+     */
+    private static final int BIT_MASK = WORD_BITS - 1;
+    /**
+     * Dilate iterations.
+     */
+    private final int dilateIterations;
+    /**
+     * Erode iterations.
+     */
+    private final int erodeIterations;
+    /**
+     * Mask pixels copied out of native memory.
+     */
+    private byte[] pixels = new byte[0];
+    /**
+     * Packed mask.
+     */
+    private long[] bits = new long[0];
+    /**
+     * Packed result of one iteration.
+     */
+    private long[] work = new long[0];
+
+    /**
+     * Create morphology.
+     *
+     * @param dilateIterations
+     *            Dilate iterations.
+     * @param erodeIterations
+     *            Erode iterations.
+     */
+    PackedMorphology(final int dilateIterations, final int erodeIterations) {
+        this.dilateIterations = dilateIterations;
+        this.erodeIterations = erodeIterations;
+    }
+
+    @Override
+    public void apply(final Mat mask) {
+        final int rows = mask.rows();
+        final int cols = mask.cols();
+        final int words = (cols + BIT_MASK) >>> WORD_SHIFT;
+        if (pixels.length < rows * cols) {
+            pixels = new byte[rows * cols];
+        }
+        if (bits.length < rows * words) {
+            bits = new long[rows * words];
+            work = new long[rows * words];
+        }
+        mask.get(0, 0, pixels);
+        pack(rows, cols, words);
+        // Bits of the last word that are inside the frame
+        long inside = -1L;
+        if ((cols & BIT_MASK) != 0) {
+            inside = (1L << (cols & BIT_MASK)) - 1;
+        }
+        for (int i = 0; i < dilateIterations; i++) {
+            iterate(rows, words, inside, false);
+        }
+        if (erodeIterations > 0) {
+            // Outside pixels count as foreground while eroding
+            for (int i = words - 1; i < rows * words; i += words) {
+                bits[i] |= ~inside;
+            }
+        }
+        for (int i = 0; i < erodeIterations; i++) {
+            iterate(rows, words, inside, true);
+        }
+        unpack(rows, cols, words);
+        mask.put(0, 0, pixels);
+    }
+
+    /**
+     * Pack pixels into bits.
+     *
+     * @param rows
+     *            Mask rows.
+     * @param cols
+     *            Mask columns.
+     * @param words
+     *            Words per row.
+     */
+    private void pack(final int rows, final int cols, final int words) {
+        Arrays.fill(bits, 0, rows * words, 0L);
+        for (int y = 0; y < rows; y++) {
+            final int pixel = y * cols;
+            final int word = y * words;
+            for (int x = 0; x < cols; x++) {
+                if (pixels[pixel + x] != 0) {
+                    bits[word + (x >>> WORD_SHIFT)] |= 1L << (x & BIT_MASK);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpack bits into pixels.
+     *
+     * @param rows
+     *            Mask rows.
+     * @param cols
+     *            Mask columns.
+     * @param words
+     *            Words per row.
+     */
+    private void unpack(final int rows, final int cols, final int words) {
+        for (int y = 0; y < rows; y++) {
+            final int pixel = y * cols;
+            final int word = y * words;
+            for (int x = 0; x < cols; x++) {
+                if ((bits[word + (x >>> WORD_SHIFT)] & 1L << (x & BIT_MASK))
+                        != 0) {
+                    pixels[pixel + x] = (byte) -1;
+                } else {
+                    pixels[pixel + x] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * One 3x3 cross kernel iteration from bits into work, then swap them.
+     *
+     * @param rows
+     *            Mask rows.
+     * @param words
+     *            Words per row.
+     * @param inside
+     *            Bits of the last word that are inside the frame.
+     * @param erode
+     *            True to erode, false to dilate.
+     */
+    private void iterate(final int rows, final int words, final long inside,
+            final boolean erode) {
+        // Value of words outside the frame
+        long outside = 0L;
+        if (erode) {
+            outside = -1L;
+        }
+        for (int y = 0; y < rows; y++) {
+            final int row = y * words;
+            for (int j = 0; j < words; j++) {
+                final int i = row + j;
+                final long center = bits[i];
+                long previous = outside;
+                if (j > 0) {
+                    previous = bits[i - 1];
+                }
+                long next = outside;
+                if (j < words - 1) {
+                    next = bits[i + 1];
+                }
+                long up = outside;
+                if (y > 0) {
+                    up = bits[i - words];
+                }
+                long down = outside;
+                if (y < rows - 1) {
+                    down = bits[i + words];
+                }
+                // Pixel x - 1 and x + 1 moved to bit x
+                final long left = center << 1 | previous >>> BIT_MASK;
+                final long right = center >>> 1 | next << BIT_MASK;
+                if (erode) {
+                    work[i] = center & left & right & up & down;
+                } else {
+                    work[i] = center | left | right | up | down;
+                }
+            }
+            // Keep outside bits of last word at outside value
+            if (erode) {
+                work[row + words - 1] |= ~inside;
+            } else {
+                work[row + words - 1] &= inside;
+            }
+        }
+        final long[] swap = bits;
+        bits = work;
+        work = swap;
+    }
+
+    @Override
+    public void release() {
+        // Only Java memory is held
+    }
+}
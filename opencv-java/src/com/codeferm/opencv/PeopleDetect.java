@@ -8,6 +8,8 @@ package com.codeferm.opencv;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -15,23 +17,46 @@ import java.util.logging.Logger;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfDouble;
-import org.opencv.core.MatOfFloat;
 import org.opencv.core.MatOfRect;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.objdetect.HOGDescriptor;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.VideoWriter;
-import org.opencv.videoio.Videoio;
 
 /**
  * Histogram of Oriented Gradients ([Dalal2005]) object detector.
  *
- * args[0] = source file or will default to "../resources/walking.mp4" if no
- * args passed.
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/walking.mp4" if no args passed.
+ *
+ * -Ddetector=full runs one detectMultiScale call per frame (default),
+ * -Ddetector=tiled runs overlapping tiles in parallel and -Ddetector=motion
+ * only runs HOG on regions where MotionDetector found motion. Tiled detection
+ * sets OpenCV to one thread for the whole process, since tiles already use
+ * every core.
+ * -Ddetector=band only scans pyramid levels that can contain people between
+ * -Dminheight=px (default 128) and -Dmaxheight=px (default frame height) tall.
+ * -Dpyramid=n runs motion analysis n pyramid levels down.
+ * -Dbackground=average|integer|mog2|knn picks the motion
+ * {@link BackgroundModel} (default average). -Dgrid=n estimates motion from
+ * every nth pixel first and skips the full mask on quiet frames.
+ * -Dmorphology=iterated|distance|packed picks the motion {@link Morphology}
+ * (default iterated).
+ *
+ * -Dtrack=true gives each person a stable ID with {@link Tracker}. Tracks are
+ * predicted on frames without detection, so -Dinterval=n (default 1) can run
+ * detection every nth frame. Tracks are kept for 30 frames plus the interval
+ * without a detection. People are counted per ID instead of per frame.
+ *
+ * -Danalytics=true skips drawing and encoding and only writes results, except
+ * every -Dsample=n frames.
+ *
+ * -Dresults=true writes people rectangles, weights and track IDs per frame to
+ * NDJSON (see {@link FrameIO}).
+ *
+ * -Dadaptive=true grabs frames on their own thread, drops stale frames and
+ * runs detection every Nth frame, adjusting N to keep up with the source.
  *
  * @author sgoldsmith
  * @version 1.0.0
@@ -49,6 +74,29 @@ final class PeopleDetect {
     static {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
     }
+    /**
+     * Output codec.
+     */
+    private static final String FOURCC = "DIVX";
+    /**
+     * Result file name format.
+     */
+    private static final String RESULTS_FILE =
+            "../output/people-detect-java-%d.ndjson";
+    /**
+     * Largest adaptive detection interval.
+     */
+    private static final int MAX_INTERVAL = 30;
+    /**
+     * Rectangle color.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final Scalar RECT_COLOR = new Scalar(0, 255, 0);
+    /**
+     * Font color.
+     */
+    private static final Scalar FONT_COLOR = new Scalar(255, 255, 255);
+    // CHECKSTYLE:ON MagicNumber
 
     /**
      * Suppress default constructor for noninstantiability.
@@ -57,18 +105,357 @@ final class PeopleDetect {
         throw new AssertionError();
     }
 
+    /**
+     * Create people detector.
+     *
+     * @param name
+     *            "full" for a single detectMultiScale call, "tiled" for
+     *            parallel tiles, "motion" for HOG only on motion regions or
+     *            "band" for HOG only at scales of the person height band.
+     *            Callers of "tiled" should set OpenCV to one thread.
+     * @param frameSize
+     *            Frame size.
+     * @return People detector.
+     */
+    public static PeopleDetector createDetector(final String name,
+            final Size frameSize) {
+        PeopleDetector peopleDetector = null;
+        if ("tiled".equals(name)) {
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            peopleDetector = new TiledHogDetector(new ForkJoinPool(), 2.0);
+            // CHECKSTYLE:ON MagicNumber
+        } else if ("motion".equals(name)) {
+            final MotionGatedDetector motionGatedDetector =
+                    new MotionGatedDetector(frameSize, Integer.getInteger(
+                            "pyramid", 0), MotionDetector.createModel(System
+                            .getProperty("background", "average")));
+            motionGatedDetector.getMotionDetector().setGridStep(
+                    Integer.getInteger("grid", 0));
+            motionGatedDetector.getMotionDetector().setMorphology(System
+                    .getProperty("morphology", "iterated"));
+            peopleDetector = motionGatedDetector;
+        } else if ("band".equals(name)) {
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            final int minHeight = Integer.getInteger("minheight", 128);
+            // CHECKSTYLE:ON MagicNumber
+            final int maxHeight = Integer.getInteger("maxheight",
+                    (int) frameSize.height);
+            logger.log(Level.INFO, String.format(
+                    "Person height %d to %d pixels", minHeight, maxHeight));
+            peopleDetector = new PyramidHogDetector(minHeight, maxHeight);
+        } else if ("full".equals(name)) {
+            peopleDetector = new HogDetector();
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unknown detector %s", name));
+        }
+        logger.log(Level.INFO, String.format("Detector: %s", name));
+        return peopleDetector;
+    }
+
+    /**
+     * Draw rectangle and weight around each person.
+     *
+     * @param mat
+     *            Frame to draw on.
+     * @param foundLocations
+     *            Rectangles of detected people.
+     * @param foundWeights
+     *            Weight of each rectangle.
+     * @param rectPoint1
+     *            Reusable top left corner.
+     * @param rectPoint2
+     *            Reusable bottom right corner.
+     * @param fontPoint
+     *            Reusable text origin.
+     */
+    public static void draw(final Mat mat, final MatOfRect foundLocations,
+            final MatOfDouble foundWeights, final Point rectPoint1,
+            final Point rectPoint2, final Point fontPoint) {
+        final double[] weights = foundWeights.toArray();
+        int i = 0;
+        for (Rect rect : foundLocations.toArray()) {
+            rectPoint1.x = rect.x;
+            rectPoint1.y = rect.y;
+            rectPoint2.x = rect.x + rect.width;
+            rectPoint2.y = rect.y + rect.height;
+            // Draw rectangle around fond object
+            Imgproc.rectangle(mat, rectPoint1, rectPoint2, RECT_COLOR, 2);
+            fontPoint.x = rect.x;
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for
+            // illustration
+            fontPoint.y = rect.y - 4;
+            // CHECKSTYLE:ON MagicNumber
+            // Print weight
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for
+            // illustration
+            Imgproc.putText(mat, String.format("%1.2f", weights[i++]),
+                    fontPoint, Core.FONT_HERSHEY_PLAIN, 1.5, FONT_COLOR, 2,
+                    Core.LINE_AA, false);
+            // CHECKSTYLE:ON MagicNumber
+        }
+    }
+
+    /**
+     * Log people counted per ID.
+     *
+     * @param tracker
+     *            Tracker.
+     * @param fps
+     *            Source frame rate.
+     */
+    private static void logTracks(final Tracker tracker, final double fps) {
+        logger.log(Level.INFO, String.format(
+                "%d people tracked, %4.2f seconds average dwell",
+                tracker.getCount(), tracker.getAverageDwell() / fps));
+    }
+
+    /**
+     * Queue detections or confirmed tracks of a frame.
+     *
+     * @param eventSink
+     *            Result sink or null.
+     * @param frame
+     *            Frame number.
+     * @param foundLocations
+     *            Rectangles of detected people.
+     * @param foundWeights
+     *            Weight of each rectangle.
+     * @param tracker
+     *            Tracker or null.
+     */
+    private static void record(final EventSink eventSink, final long frame,
+            final MatOfRect foundLocations, final MatOfDouble foundWeights,
+            final Tracker tracker) {
+        if (eventSink == null) {
+            return;
+        }
+        final long time = System.currentTimeMillis();
+        if (tracker == null) {
+            eventSink.record(frame, time, foundLocations.toArray(),
+                    foundWeights.toArray(), null);
+        } else {
+            final List<Tracker.Track> tracks = tracker.getTracks();
+            final Rect[] rects = new Rect[tracks.size()];
+            final double[] weights = new double[rects.length];
+            final int[] ids = new int[rects.length];
+            for (int i = 0; i < rects.length; i++) {
+                rects[i] = tracks.get(i).getRect();
+                weights[i] = tracks.get(i).getWeight();
+                ids[i] = tracks.get(i).getId();
+            }
+            eventSink.record(frame, time, rects, weights, ids);
+        }
+    }
+
+    /**
+     * Detect on every frame, or every interval frames with tracks predicted
+     * in between when tracker is not null.
+     *
+     * @param source
+     *            Source of frames.
+     * @param sink
+     *            Destination of processed frames.
+     * @param peopleDetector
+     *            Detector.
+     * @param tracker
+     *            Tracker or null.
+     * @param interval
+     *            Detect every interval frames when tracking.
+     * @param framesWithPeople
+     *            Incremented for each frame with people.
+     * @param eventSink
+     *            Result sink or null.
+     * @param metrics
+     *            Stage timing.
+     * @return Frames processed.
+     */
+    private static int run(final FrameSource source, final FrameSink sink,
+            final PeopleDetector peopleDetector, final Tracker tracker,
+            final int interval, final AtomicInteger framesWithPeople,
+            final EventSink eventSink, final Metrics metrics) {
+        int frames = 0;
+        // Pool releases native memory even if the loop throws
+        try (MatPool pool = new MatPool()) {
+            final Mat mat = pool.acquire();
+            final MatOfRect foundLocations = pool.track(new MatOfRect());
+            final MatOfDouble foundWeights = pool.track(new MatOfDouble());
+            final Point rectPoint1 = new Point();
+            final Point rectPoint2 = new Point();
+            final Point fontPoint = new Point();
+            long time = System.nanoTime();
+            while (source.read(mat)) {
+                time = metrics.record(Metrics.Stage.READ, time);
+                final boolean encoded = FrameIO.isEncoded(frames);
+                if (tracker == null) {
+                    peopleDetector.detect(mat, foundLocations, foundWeights);
+                    time = metrics.record(Metrics.Stage.PROCESS, time);
+                    if (foundLocations.rows() > 0) {
+                        framesWithPeople.incrementAndGet();
+                        if (encoded) {
+                            draw(mat, foundLocations, foundWeights,
+                                    rectPoint1, rectPoint2, fontPoint);
+                        }
+                    }
+                } else {
+                    if (frames % interval == 0) {
+                        peopleDetector.detect(mat, foundLocations,
+                                foundWeights);
+                        tracker.update(foundLocations.toArray(),
+                                foundWeights.toArray());
+                    } else {
+                        tracker.predict();
+                    }
+                    time = metrics.record(Metrics.Stage.PROCESS, time);
+                    if (!tracker.getTracks().isEmpty()) {
+                        framesWithPeople.incrementAndGet();
+                        if (encoded) {
+                            tracker.draw(mat);
+                        }
+                    }
+                }
+                time = metrics.record(Metrics.Stage.DRAW, time);
+                record(eventSink, frames, foundLocations, foundWeights,
+                        tracker);
+                if (sink != null) {
+                    sink.write(mat);
+                }
+                time = metrics.record(Metrics.Stage.WRITE, time);
+                frames++;
+            }
+            metrics.reportMemory("frame loop", pool);
+        }
+        return frames;
+    }
+
+    /**
+     * Detect people at an adaptive cadence. A grabber thread keeps only the
+     * newest frame, so latency stays bounded when detection is slower than
+     * the source.
+     *
+     * -Dtrack=true tracks detections and predicts them between detections.
+     *
+     * @param source
+     *            Source of frames.
+     * @param sink
+     *            Destination of processed frames.
+     * @param peopleDetector
+     *            Detector.
+     * @param fps
+     *            Source frame rate.
+     * @param framesWithPeople
+     *            Incremented for each frame with people.
+     * @param eventSink
+     *            Result sink or null.
+     * @param metrics
+     *            Draw and write stage timing.
+     * @return Frames processed.
+     */
+    private static int runAdaptive(final FrameSource source,
+            final FrameSink sink, final PeopleDetector peopleDetector,
+            final double fps, final AtomicInteger framesWithPeople,
+            final EventSink eventSink, final Metrics metrics) {
+        // Live sources pace themselves, others are paced to fps
+        double paceFps = fps;
+        if (source.isLive()) {
+            paceFps = 0;
+        }
+        final FrameGrabber frameGrabber = new FrameGrabber(source, paceFps);
+        final AdaptiveScheduler scheduler = new AdaptiveScheduler(
+                frameGrabber, peopleDetector, fps, MAX_INTERVAL,
+                Boolean.getBoolean("track"));
+        if (scheduler.getTracker() != null) {
+            logger.log(Level.INFO, String.format("Max misses %d", scheduler
+                    .getTracker().getMaxMisses()));
+        }
+        frameGrabber.start();
+        try {
+            scheduler.run(new AdaptiveScheduler.Listener() {
+                /**
+                 * Frames processed.
+                 */
+                private long frames;
+                /**
+                 * Top left corner.
+                 */
+                private final Point rectPoint1 = new Point();
+                /**
+                 * Bottom right corner.
+                 */
+                private final Point rectPoint2 = new Point();
+                /**
+                 * Text origin.
+                 */
+                private final Point fontPoint = new Point();
+
+                @Override
+                public void frame(final Mat mat,
+                        final MatOfRect foundLocations,
+                        final MatOfDouble foundWeights, final boolean detected) {
+                    long time = System.nanoTime();
+                    if (foundLocations.rows() > 0) {
+                        framesWithPeople.incrementAndGet();
+                    }
+                    // Analytics mode only draws frames that will be encoded
+                    if (FrameIO.isEncoded(frames++)) {
+                        if (scheduler.getTracker() == null) {
+                            draw(mat, foundLocations, foundWeights,
+                                    rectPoint1, rectPoint2, fontPoint);
+                        } else {
+                            scheduler.getTracker().draw(mat);
+                        }
+                    }
+                    time = metrics.record(Metrics.Stage.DRAW, time);
+                    record(eventSink, scheduler.getSequence(),
+                            foundLocations, foundWeights, scheduler
+                                    .getTracker());
+                    if (sink != null) {
+                        sink.write(mat);
+                    }
+                    metrics.record(Metrics.Stage.WRITE, time);
+                }
+            });
+            frameGrabber.stop();
+            logger.log(Level.INFO, String.format(
+                    "%d detections, %d dropped frames, interval %d",
+                    scheduler.getDetections(), frameGrabber.getDropped(),
+                    scheduler.getInterval()));
+            logger.log(Level.INFO, String.format(
+                    "Latency: %4.2f ms average, %4.2f ms max",
+                    scheduler.getAverageLatency(), scheduler.getMaxLatency()));
+            if (scheduler.getTracker() != null) {
+                logTracks(scheduler.getTracker(), fps);
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Adaptive detection interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Grabber must be stopped before its Mats are released
+            try {
+                frameGrabber.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Release native memory
+            scheduler.release();
+            frameGrabber.release();
+        }
+        return scheduler.getFrames();
+    }
+
     /**
      * Create window, frame and set window to visible.
      *
-     * args[0] = source file or will default to "../resources/walking.mp4" if no
-     * args passed.
+     * args[0] = source (see {@link FrameIO}) or will default to
+     * "../resources/walking.mp4" if no args passed.
      *
      * @param args
      *            String array of arguments.
      */
     public static void main(final String[] args) {
         String url = null;
-        final String outputFile = "../output/people-detect-java.avi";
+        final String outputFile = FrameIO
+                .outputFile("../output/people-detect-java.avi");
         // Check how many arguments were passed in
         if (args.length == 0) {
             // If no arguments were passed then default to local file
@@ -87,76 +474,66 @@ final class PeopleDetect {
         logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
         logger.log(Level.INFO, String.format("Input file: %s", url));
         logger.log(Level.INFO, String.format("Output file: %s", outputFile));
-        final VideoCapture videoCapture = new VideoCapture(url);
-        final Size frameSize = new Size(
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+        final FrameSource source = FrameIO.source(url);
+        final Size frameSize = source.getFrameSize();
         logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
-        final FourCC fourCC = new FourCC("DIVX");
-        VideoWriter videoWriter = new VideoWriter(outputFile, fourCC.toInt(),
-                videoCapture.get(Videoio.CAP_PROP_FPS), frameSize, true);
-        final Mat mat = new Mat();
-        // final HOGDescriptor hog = new HOGDescriptor(new Size(128, 64),
-        // new Size(16, 16), new Size(8, 8), new Size(8, 8), 9, 0, -1, 0,
-        // 0.2, false, 64);
-        final HOGDescriptor hog = new HOGDescriptor();
-        final MatOfFloat descriptors = HOGDescriptor.getDefaultPeopleDetector();
-        hog.setSVMDetector(descriptors);
-        final MatOfRect foundLocations = new MatOfRect();
-        final MatOfDouble foundWeights = new MatOfDouble();
-        final Size winStride = new Size(8, 8);
-        final Size padding = new Size(32, 32);
-        final Point rectPoint1 = new Point();
-        final Point rectPoint2 = new Point();
-        final Point fontPoint = new Point();
-        int frames = 0;
-        int framesWithPeople = 0;
+        final double fps = FrameIO.fps(source);
+        final FrameSink sink = FrameIO.sink(outputFile, FOURCC, source);
+        final String detector = System.getProperty("detector", "full");
+        if ("tiled".equals(detector)) {
+            // Parallelism comes from tiles, so keep OpenCV from
+            // oversubscribing
+            Core.setNumThreads(1);
+        }
+        final PeopleDetector peopleDetector = createDetector(detector,
+                frameSize);
+        final EventSink eventSink = FrameIO.results(RESULTS_FILE);
+        final Metrics metrics = new Metrics("PeopleDetect");
+        metrics.start();
         final long startTime = System.currentTimeMillis();
-        final Scalar rectColor = new Scalar(0, 255, 0);
-        final Scalar fontColor = new Scalar(255, 255, 255);
-        while (videoCapture.read(mat)) {
-            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
-            hog.detectMultiScale(mat, foundLocations, foundWeights, 0.0,
-                    winStride, padding, 1.05, 2.0, false);
-            // CHECKSTYLE:ON MagicNumber
-            if (foundLocations.rows() > 0) {
-                framesWithPeople++;
-                List<Double> weightList = foundWeights.toList();
-                List<Rect> rectList = foundLocations.toList();
-                int i = 0;
-                for (Rect rect : rectList) {
-                    rectPoint1.x = rect.x;
-                    rectPoint1.y = rect.y;
-                    rectPoint2.x = rect.x + rect.width;
-                    rectPoint2.y = rect.y + rect.height;
-                    // Draw rectangle around fond object
-                    Imgproc.rectangle(mat, rectPoint1, rectPoint2, rectColor, 2);
-                    fontPoint.x = rect.x;
-                    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for
-                    // illustration
-                    fontPoint.y = rect.y - 4;
-                    // CHECKSTYLE:ON MagicNumber
-                    // Print weight
-                    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for
-                    // illustration
-                    Imgproc.putText(mat,
-                            String.format("%1.2f", weightList.get(i++)),
-                            fontPoint, Core.FONT_HERSHEY_PLAIN, 1.5, fontColor,
-                            2, Core.LINE_AA, false);
-                    // CHECKSTYLE:ON MagicNumber
+        int frames = 0;
+        final AtomicInteger framesWithPeople = new AtomicInteger();
+        try {
+            if (Boolean.getBoolean("adaptive")) {
+                frames = runAdaptive(source, sink, peopleDetector, fps,
+                        framesWithPeople, eventSink, metrics);
+            } else {
+                final int interval = Math.max(1, Integer.getInteger(
+                        "interval", 1));
+                Tracker tracker = null;
+                if (Boolean.getBoolean("track")) {
+                    // Tracks must survive the frames between detections
+                    tracker = new Tracker(Tracker.IOU_THRESHOLD,
+                            Tracker.MAX_MISSES + interval, Tracker.MIN_HITS);
+                    logger.log(Level.INFO, String.format(
+                            "Detecting every %d frames, max misses %d",
+                            interval, tracker.getMaxMisses()));
+                }
+                frames = run(source, sink, peopleDetector, tracker, interval,
+                        framesWithPeople, eventSink, metrics);
+                if (tracker != null) {
+                    logTracks(tracker, fps);
                 }
             }
-            videoWriter.write(mat);
-            frames++;
+        } finally {
+            // Release native memory
+            peopleDetector.release();
+            source.release();
+            if (sink != null) {
+                sink.release();
+            }
+            if (eventSink != null) {
+                eventSink.close();
+            }
         }
         final long estimatedTime = System.currentTimeMillis() - startTime;
+        metrics.stop();
         logger.log(Level.INFO, String.format(
-                "%d frames, %d frames with people", frames, framesWithPeople));
+                "%d frames, %d frames with people", frames,
+                framesWithPeople.get()));
         // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
         logger.log(Level.INFO, String.format("Elipse time: %4.2f seconds",
                 (double) estimatedTime / 1000));
         // CHECKSTYLE:ON MagicNumber
-        // Release native memory
-        mat.release();
     }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+
+/**
+ * Finds people in a frame. Results use the same MatOfRect and MatOfDouble
+ * layout as HOGDescriptor.detectMultiScale, so detectors are interchangeable.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+interface PeopleDetector {
+    /**
+     * Detect people in frame. Frame is not modified.
+     *
+     * @param mat
+     *            Frame.
+     * @param foundLocations
+     *            Rectangles of detected people.
+     * @param foundWeights
+     *            Weight of each rectangle.
+     */
+    void detect(Mat mat, MatOfRect foundLocations, MatOfDouble foundWeights);
+
+    /**
+     * Release native memory held by detector.
+     */
+    void release();
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 2, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+/**
+ * Three stage decode, process and encode pipeline. Decode and encode run on
+ * their own threads and processing runs on the calling thread. Stages are
+ * joined by bounded FIFO queues and frames circulate through a fixed pool of
+ * pre-allocated Mats, so output order matches input order and there is no
+ * per-frame native allocation.
+ *
+ * If the sink fails, the encoder stops writing but keeps recycling buffers,
+ * so decode and process can stop without waiting forever, and
+ * {@link #run()} throws the failure.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class Pipeline {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger.getLogger(Pipeline.class // NOPMD
+            .getName());
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Default number of frame buffers.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+    /**
+     * Source of frames.
+     */
+    private final FrameSource source;
+    /**
+     * Destination of processed frames or null to discard them.
+     */
+    private final FrameSink sink;
+    /**
+     * Processing stage.
+     */
+    private final FrameProcessor processor;
+    /**
+     * Read and write stage timing.
+     */
+    private final Metrics metrics;
+    /**
+     * Owns pre-allocated frame buffers.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Marks end of stream. Never read into or written.
+     */
+    private final Mat endOfStream = pool.acquire();
+    /**
+     * Buffers ready to be decoded into.
+     */
+    private final BlockingQueue<Mat> freeQueue;
+    /**
+     * Decoded frames waiting to be processed.
+     */
+    private final BlockingQueue<Mat> decodedQueue;
+    /**
+     * Processed frames waiting to be encoded.
+     */
+    private final BlockingQueue<Mat> processedQueue;
+    /**
+     * First sink failure or null.
+     */
+    private volatile RuntimeException encodeFailure;
+
+    /**
+     * Create pipeline and pre-allocate frame buffers.
+     *
+     * @param source
+     *            Source of frames.
+     * @param sink
+     *            Destination of processed frames or null to discard them.
+     * @param processor
+     *            Processing stage.
+     * @param poolSize
+     *            Number of frame buffers.
+     * @param metrics
+     *            Read and write stage timing.
+     */
+    Pipeline(final FrameSource source, final FrameSink sink,
+            final FrameProcessor processor, final int poolSize,
+            final Metrics metrics) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException(
+                    "Pool size must be greater than zero");
+        }
+        this.source = source;
+        this.sink = sink;
+        this.processor = processor;
+        this.metrics = metrics;
+        // Room for every buffer plus end of stream marker
+        freeQueue = new ArrayBlockingQueue<Mat>(poolSize);
+        decodedQueue = new ArrayBlockingQueue<Mat>(poolSize + 1);
+        processedQueue = new ArrayBlockingQueue<Mat>(poolSize + 1);
+        final Size frameSize = source.getFrameSize();
+        for (int i = 0; i < poolSize; i++) {
+            freeQueue.add(pool.acquire((int) frameSize.height,
+                    (int) frameSize.width, CvType.CV_8UC3));
+        }
+    }
+
+    /**
+     * Run pipeline until source is exhausted.
+     *
+     * @return Number of frames processed.
+     * @throws InterruptedException
+     *             If interrupted while waiting on a stage.
+     * @throws IllegalStateException
+     *             If the sink failed. The cause is the sink's exception.
+     */
+    public int run() throws InterruptedException {
+        final Thread decodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                decode();
+            }
+        }, "decode");
+        final Thread encodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encode();
+            }
+        }, "encode");
+        decodeThread.start();
+        encodeThread.start();
+        int frames = 0;
+        try {
+            Mat mat = decodedQueue.take();
+            while (mat != endOfStream && encodeFailure == null) {
+                processor.process(mat);
+                processedQueue.put(mat);
+                frames++;
+                mat = decodedQueue.take();
+            }
+        } finally {
+            // Always let encoder drain, stop decoder if processing failed
+            processedQueue.put(endOfStream);
+            decodeThread.interrupt();
+            decodeThread.join();
+            encodeThread.join();
+        }
+        if (encodeFailure != null) {
+            throw new IllegalStateException("Encode stage failed",
+                    encodeFailure);
+        }
+        return frames;
+    }
+
+    /**
+     * Decode stage. Reads into free buffers until source is exhausted.
+     */
+    private void decode() {
+        try {
+            Mat mat = freeQueue.take();
+            long time = System.nanoTime();
+            while (source.read(mat)) {
+                metrics.record(Metrics.Stage.READ, time);
+                decodedQueue.put(mat);
+                mat = freeQueue.take();
+                time = System.nanoTime();
+            }
+            freeQueue.put(mat);
+        } catch (InterruptedException e) {
+            logger.log(Level.FINE, "Decode interrupted");
+        } finally {
+            // Capacity is reserved for marker, so this never blocks
+            decodedQueue.offer(endOfStream);
+        }
+    }
+
+    /**
+     * Encode stage. Writes processed frames in order and recycles buffers.
+     * After a sink failure frames are no longer written, but buffers still go
+     * back to the free queue until end of stream.
+     */
+    private void encode() {
+        try {
+            Mat mat = processedQueue.take();
+            while (mat != endOfStream) {
+                if (sink != null && encodeFailure == null) {
+                    try {
+                        final long time = System.nanoTime();
+                        sink.write(mat);
+                        metrics.record(Metrics.Stage.WRITE, time);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Encode failed", e);
+                        encodeFailure = e;
+                    }
+                }
+                freeQueue.put(mat);
+                mat = processedQueue.take();
+            }
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Encode interrupted");
+        }
+    }
+
+    /**
+     * Report native memory held by frame buffers and free it.
+     */
+    public void release() {
+        metrics.reportMemory("pipeline", pool);
+        pool.close();
+    }
+}
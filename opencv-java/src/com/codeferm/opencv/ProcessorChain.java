@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs processors in order on the same frame, so stages can be combined
+ * without writing a new loop.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class ProcessorChain implements FrameProcessor {
+    /**
+     * Stages in order.
+     */
+    private final List<FrameProcessor> processors;
+
+    /**
+     * Create chain.
+     *
+     * @param processors
+     *            Stages in order.
+     */
+    ProcessorChain(final FrameProcessor... processors) {
+        this.processors = Collections.unmodifiableList(Arrays
+                .asList(processors.clone()));
+    }
+
+    @Override
+    public void process(final Mat mat) {
+        for (FrameProcessor processor : processors) {
+            processor.process(mat);
+        }
+    }
+
+    /**
+     * Stages in order.
+     *
+     * @return Processors.
+     */
+    public List<FrameProcessor> getProcessors() {
+        return processors;
+    }
+
+    @Override
+    public void release() {
+        for (FrameProcessor processor : processors) {
+            processor.release();
+        }
+    }
+}
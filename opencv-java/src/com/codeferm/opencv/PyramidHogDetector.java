@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 26, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.HOGDescriptor;
+import org.opencv.objdetect.Objdetect;
+
+/**
+ * HOG people detector limited to a band of person heights. detectMultiScale
+ * evaluates every pyramid level down to the window size, but with fixed
+ * cameras people only appear within a known pixel height range. A person of
+ * height h is found at the level whose downscale factor is h / window height,
+ * so only levels between minHeight and maxHeight are built in an
+ * {@link ImagePyramid} and scanned with single scale HOG.
+ *
+ * Levels start on detectMultiScale's level grid (powers of scale) and hits
+ * are grouped with the same groupRectangles rule (more than FINAL_THRESHOLD
+ * hits, eps 0.2), so a person whose hits all fall inside the band gets the
+ * same box as from detectMultiScale. The weight of a box is the largest
+ * weight of the hits similar to it. People smaller than the window are not
+ * upscaled, so heights below 128 pixels are not found. {@link HogCheck}
+ * compares band detections with detectMultiScale.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class PyramidHogDetector implements PeopleDetector {
+    /**
+     * Relative difference below which hits are grouped, same as
+     * detectMultiScale.
+     */
+    private static final double GROUP_EPS = 0.2;
+    /**
+     * HOG descriptor.
+     */
+    private final HOGDescriptor hog;
+    /**
+     * SVM coefficients.
+     */
+    private final MatOfFloat descriptors;
+    /**
+     * Window stride.
+     */
+    private final Size winStride;
+    /**
+     * Padding.
+     */
+    private final Size padding;
+    /**
+     * Smallest person height in pixels.
+     */
+    private final double minHeight;
+    /**
+     * Largest person height in pixels.
+     */
+    private final double maxHeight;
+    /**
+     * Factor between pyramid levels.
+     */
+    private final double scale;
+    /**
+     * Detection window size.
+     */
+    private final Size winSize;
+    /**
+     * Pyramid of current frame.
+     */
+    private final ImagePyramid pyramid;
+    /**
+     * Level hit positions.
+     */
+    private final MatOfPoint levelLocations = new MatOfPoint();
+    /**
+     * Level hit weights.
+     */
+    private final MatOfDouble levelWeights = new MatOfDouble();
+    /**
+     * Hits in frame coordinates.
+     */
+    private final List<Rect> rects = new ArrayList<Rect>();
+    /**
+     * Hit weights.
+     */
+    private final List<Double> weights = new ArrayList<Double>();
+    /**
+     * Hits, then grouped boxes.
+     */
+    private final MatOfRect grouped = new MatOfRect();
+    /**
+     * Hits in each group.
+     */
+    private final MatOfInt groupCounts = new MatOfInt();
+    /**
+     * Grouped box weights.
+     */
+    private final List<Double> groupWeights = new ArrayList<Double>();
+    /**
+     * Levels scanned by last detect.
+     */
+    private int levels;
+
+    /**
+     * Create detector using default people detector and default parameters.
+     *
+     * @param minHeight
+     *            Smallest person height in pixels.
+     * @param maxHeight
+     *            Largest person height in pixels.
+     */
+    PyramidHogDetector(final double minHeight, final double maxHeight) {
+        this(HogDetector.WIN_STRIDE, HogDetector.PADDING, HogDetector.SCALE,
+                minHeight, maxHeight);
+    }
+
+    /**
+     * Create detector using default people detector.
+     *
+     * @param winStride
+     *            Window stride.
+     * @param padding
+     *            Padding.
+     * @param scale
+     *            Factor between pyramid levels.
+     * @param minHeight
+     *            Smallest person height in pixels.
+     * @param maxHeight
+     *            Largest person height in pixels.
+     */
+    PyramidHogDetector(final Size winStride, final Size padding,
+            final double scale, final double minHeight,
+            final double maxHeight) {
+        if (minHeight <= 0 || maxHeight < minHeight) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid height range %.0f to %.0f", minHeight,
+                    maxHeight));
+        }
+        this.winStride = winStride;
+        this.padding = padding;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.scale = scale;
+        hog = new HOGDescriptor();
+        descriptors = HOGDescriptor.getDefaultPeopleDetector();
+        hog.setSVMDetector(descriptors);
+        winSize = hog.get_winSize();
+        pyramid = new ImagePyramid(scale);
+    }
+
+    /**
+     * Smallest level downscale factor that can contain a person.
+     *
+     * @return Factor.
+     */
+    public double getMinFactor() {
+        return minHeight / winSize.height;
+    }
+
+    /**
+     * Largest level downscale factor that can contain a person.
+     *
+     * @return Factor.
+     */
+    public double getMaxFactor() {
+        return maxHeight / winSize.height;
+    }
+
+    /**
+     * Detection window size, which is the smallest useful level size.
+     *
+     * @return Window size.
+     */
+    public Size getWinSize() {
+        return winSize;
+    }
+
+    /**
+     * Same test groupRectangles uses to put two boxes in one group.
+     *
+     * @param a
+     *            First box.
+     * @param b
+     *            Second box.
+     * @return True if similar.
+     */
+    private static boolean similar(final Rect a, final Rect b) {
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        final double delta = GROUP_EPS
+                * (Math.min(a.width, b.width) + Math.min(a.height, b.height))
+                * 0.5;
+        // CHECKSTYLE:ON MagicNumber
+        return Math.abs(a.x - b.x) <= delta && Math.abs(a.y - b.y) <= delta
+                && Math.abs(a.x + a.width - b.x - b.width) <= delta
+                && Math.abs(a.y + a.height - b.y - b.height) <= delta;
+    }
+
+    @Override
+    public void detect(final Mat mat, final MatOfRect foundLocations,
+            final MatOfDouble foundWeights) {
+        // Allow half a level either side for rounding of the band
+        final double margin = Math.sqrt(scale);
+        // Start on detectMultiScale's level grid, so hits are the same
+        double minFactor = 1.0;
+        while (minFactor * scale <= getMinFactor() / margin) {
+            minFactor *= scale;
+        }
+        levels = pyramid.build(mat, minFactor, getMaxFactor() * margin,
+                winSize);
+        rects.clear();
+        weights.clear();
+        for (int i = 0; i < levels; i++) {
+            final double factor = pyramid.getFactor(i);
+            hog.detect(pyramid.getLevel(i), levelLocations, levelWeights, 0.0,
+                    winStride, padding);
+            if (levelLocations.rows() > 0) {
+                final Point[] points = levelLocations.toArray();
+                final double[] scores = levelWeights.toArray();
+                for (int j = 0; j < points.length; j++) {
+                    rects.add(new Rect((int) Math.round(points[j].x * factor),
+                            (int) Math.round(points[j].y * factor),
+                            (int) Math.round(winSize.width * factor),
+                            (int) Math.round(winSize.height * factor)));
+                    weights.add(scores[j]);
+                }
+            }
+        }
+        grouped.fromList(rects);
+        Objdetect.groupRectangles(grouped, groupCounts,
+                (int) HogDetector.FINAL_THRESHOLD, GROUP_EPS);
+        final Rect[] boxes = grouped.toArray();
+        groupWeights.clear();
+        for (Rect box : boxes) {
+            double weight = 0;
+            for (int i = 0; i < rects.size(); i++) {
+                if (similar(box, rects.get(i))) {
+                    weight = Math.max(weight, weights.get(i));
+                }
+            }
+            groupWeights.add(weight);
+        }
+        foundLocations.fromArray(boxes);
+        foundWeights.fromList(groupWeights);
+    }
+
+    /**
+     * Levels scanned by last detect.
+     *
+     * @return Level count.
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        pyramid.release();
+        grouped.release();
+        grouped.delete();
+        groupCounts.release();
+        groupCounts.delete();
+        levelLocations.release();
+        levelLocations.delete();
+        levelWeights.release();
+        levelWeights.delete();
+        descriptors.release();
+        descriptors.delete();
+        hog.delete();
+    }
+}
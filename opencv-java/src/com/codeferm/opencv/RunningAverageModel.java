@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Running average background. accumulateWeighted keeps a CV_32F average of
+ * the frames, which is scaled back to 8 bits, subtracted from the frame and
+ * thresholded. This is the model {@link MotionDetector} has always used.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class RunningAverageModel implements BackgroundModel {
+    /**
+     * Default moving average alpha.
+     */
+    public static final double ALPHA = 0.03;
+    /**
+     * Default threshold used to convert difference to BW.
+     */
+    public static final double THRESHOLD = 25.0;
+    /**
+     * Owns all working Mats.
+     */
+    private final MatPool pool = new MatPool();
+    /**
+     * Moving average image.
+     */
+    private final Mat movingAvgImg = pool.acquire();
+    /**
+     * Scaled moving average image.
+     */
+    private final Mat scaleImg = pool.acquire();
+    /**
+     * Difference image.
+     */
+    private final Mat diffImg = pool.acquire();
+    /**
+     * Sampled frame.
+     */
+    private final Mat gridFrame = pool.acquire();
+    /**
+     * Sampled moving average.
+     */
+    private final Mat gridAvg = pool.acquire();
+    /**
+     * Sampled scaled moving average.
+     */
+    private final Mat gridScale = pool.acquire();
+    /**
+     * Sampled difference.
+     */
+    private final Mat gridDiff = pool.acquire();
+    /**
+     * Sampled foreground.
+     */
+    private final Mat gridMask = pool.acquire();
+    /**
+     * Moving average alpha.
+     */
+    private final double alpha;
+    /**
+     * Threshold used to convert difference to BW.
+     */
+    private final double threshold;
+
+    /**
+     * Create model with default alpha and threshold.
+     */
+    RunningAverageModel() {
+        this(ALPHA, THRESHOLD);
+    }
+
+    /**
+     * Create model.
+     *
+     * @param alpha
+     *            Moving average alpha.
+     * @param threshold
+     *            Threshold used to convert difference to BW.
+     */
+    RunningAverageModel(final double alpha, final double threshold) {
+        this.alpha = alpha;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void apply(final Mat frame, final Mat foreground) {
+        // Generate moving average image if needed
+        if (movingAvgImg.empty()) {
+            reset(frame);
+        }
+        // Generate moving average image
+        Imgproc.accumulateWeighted(frame, movingAvgImg, alpha);
+        difference(frame, movingAvgImg, scaleImg, diffImg, foreground);
+    }
+
+    @Override
+    public double estimate(final Mat frame, final int step) {
+        if (movingAvgImg.empty()) {
+            reset(frame);
+        }
+        Imgproc.accumulateWeighted(frame, movingAvgImg, alpha);
+        SparseGrid.sample(frame, gridFrame, step);
+        SparseGrid.sample(movingAvgImg, gridAvg, step);
+        difference(gridFrame, gridAvg, gridScale, gridDiff, gridMask);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        return 100.0 * Core.countNonZero(gridMask) / gridMask.total();
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    @Override
+    public void foreground(final Mat frame, final Mat foreground) {
+        difference(frame, movingAvgImg, scaleImg, diffImg, foreground);
+    }
+
+    /**
+     * Threshold difference between frame and moving average. Full frame and
+     * grid use their own work Mats, so neither is reallocated when both run
+     * on the same frame.
+     *
+     * @param frame
+     *            Frame.
+     * @param average
+     *            Moving average of the same size.
+     * @param scaled
+     *            Scaled moving average work Mat.
+     * @param diff
+     *            Difference work Mat.
+     * @param foreground
+     *            Foreground mask.
+     */
+    private void difference(final Mat frame, final Mat average,
+            final Mat scaled, final Mat diff, final Mat foreground) {
+        // Convert the scale of the moving average
+        Core.convertScaleAbs(average, scaled);
+        // Subtract the work image frame from the scaled image average
+        Core.absdiff(frame, scaled, diff);
+        Mat gray = diff;
+        if (diff.channels() > 1) {
+            // Convert the image to grayscale
+            Imgproc.cvtColor(diff, foreground, Imgproc.COLOR_BGR2GRAY);
+            gray = foreground;
+        }
+        // Convert to BW
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        Imgproc.threshold(gray, foreground, threshold, 255,
+                Imgproc.THRESH_BINARY);
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    @Override
+    public void reset(final Mat frame) {
+        frame.convertTo(movingAvgImg, CvType.CV_32F);
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        pool.close();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 29, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+
+/**
+ * Passes every Nth frame to another sink and drops the rest without encoding
+ * them, so analytics-only runs can still write spot check video. Frames are
+ * counted from 0 in write order, which matches {@link FrameIO#isEncoded(long)}
+ * for processors that count frames the same way.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class SampledSink implements FrameSink {
+    /**
+     * Sink sampled frames are written to.
+     */
+    private final FrameSink sink;
+    /**
+     * Write every interval frames.
+     */
+    private final int interval;
+    /**
+     * Frames seen.
+     */
+    private long frames;
+
+    /**
+     * Create sampled sink.
+     *
+     * @param sink
+     *            Sink sampled frames are written to.
+     * @param interval
+     *            Write every interval frames.
+     */
+    SampledSink(final FrameSink sink, final int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException(
+                    "Interval must be greater than zero");
+        }
+        this.sink = sink;
+        this.interval = interval;
+    }
+
+    @Override
+    public void write(final Mat mat) {
+        if (frames++ % interval == 0) {
+            sink.write(mat);
+        }
+    }
+
+    @Override
+    public void release() {
+        sink.release();
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 20, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Transcodes a seekable file by splitting it into frame ranges that are
+ * encoded in parallel, each with its own VideoCapture and VideoWriter, then
+ * joined in order. Segments are joined with the ffmpeg concat demuxer without
+ * re-encoding. If ffmpeg is not available segments are joined by decoding and
+ * encoding them again on one thread, which is still correct but not faster.
+ *
+ * Backends that cannot seek exactly with CAP_PROP_POS_FRAMES are detected
+ * after the seek and the segment skips frames with grab() instead, so every
+ * source frame is written exactly once.
+ *
+ * The frames read by the segments and the frames in the joined output are
+ * both checked against the source's frame count, and the transcode fails if
+ * either one differs.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class SegmentedTranscoder {
+    /**
+     * Logger.
+     */
+    // CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger logger = Logger // NOPMD
+            .getLogger(SegmentedTranscoder.class.getName());
+    // CHECKSTYLE:ON ConstantName
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Longest wait for interrupted segments to close their files.
+     */
+    private static final long SHUTDOWN_SECONDS = 60;
+    /**
+     * Source file.
+     */
+    private final String url;
+    /**
+     * Destination file.
+     */
+    private final String outputFile;
+    /**
+     * Output codec.
+     */
+    private final FourCC fourCC;
+    /**
+     * Number of segments.
+     */
+    private final int segments;
+
+    /**
+     * One frame range. Reads from start up to but not including end, or to
+     * end of file for the last segment.
+     */
+    private final class Segment implements Callable<Integer> {
+        /**
+         * Segment index.
+         */
+        private final int index;
+        /**
+         * First frame.
+         */
+        private final int start;
+        /**
+         * Frame after last or -1 to read to end of file.
+         */
+        private final int end;
+        /**
+         * Temporary output file.
+         */
+        private final File file;
+
+        /**
+         * Create segment.
+         *
+         * @param index
+         *            Segment index.
+         * @param start
+         *            First frame.
+         * @param end
+         *            Frame after last or -1 to read to end of file.
+         * @param file
+         *            Temporary output file.
+         */
+        Segment(final int index, final int start, final int end,
+                final File file) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.file = file;
+        }
+
+        /**
+         * Position capture at first frame.
+         *
+         * @param videoCapture
+         *            Source.
+         */
+        private void seek(final VideoCapture videoCapture) {
+            if (start == 0) {
+                return;
+            }
+            videoCapture.set(Videoio.CAP_PROP_POS_FRAMES, start);
+            if ((int) videoCapture.get(Videoio.CAP_PROP_POS_FRAMES) != start) {
+                logger.log(Level.WARNING, String.format(
+                        "Segment %d: inexact seek, skipping %d frames",
+                        index, start));
+                videoCapture.open(url);
+                int skipped = 0;
+                while (skipped < start
+                        && !Thread.currentThread().isInterrupted()
+                        && videoCapture.grab()) {
+                    skipped++;
+                }
+            }
+        }
+
+        /**
+         * Encode segment.
+         *
+         * @return Frames written.
+         */
+        @Override
+        public Integer call() {
+            final VideoCapture videoCapture = new VideoCapture(url);
+            final Size frameSize = new Size(
+                    (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                    (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+            final VideoWriter videoWriter = new VideoWriter(file.getPath(),
+                    fourCC.toInt(), videoCapture.get(Videoio.CAP_PROP_FPS),
+                    frameSize, true);
+            int frames = 0;
+            try (MatPool pool = new MatPool()) {
+                seek(videoCapture);
+                final Mat mat = pool.acquire();
+                // Stop early if another segment failed
+                while ((end < 0 || start + frames < end)
+                        && !Thread.currentThread().isInterrupted()
+                        && videoCapture.read(mat)) {
+                    videoWriter.write(mat);
+                    frames++;
+                }
+            } finally {
+                videoWriter.release();
+                videoCapture.release();
+            }
+            logger.log(Level.FINE, String.format(
+                    "Segment %d: frames %d to %d, %d written", index, start,
+                    end, frames));
+            return frames;
+        }
+    }
+
+    /**
+     * Create transcoder.
+     *
+     * @param url
+     *            Seekable source file.
+     * @param outputFile
+     *            Destination file.
+     * @param fourCC
+     *            Output codec.
+     * @param segments
+     *            Number of segments, usually number of cores.
+     */
+    SegmentedTranscoder(final String url, final String outputFile,
+            final FourCC fourCC, final int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException(
+                    "Segments must be greater than zero");
+        }
+        this.url = url;
+        this.outputFile = outputFile;
+        this.fourCC = fourCC;
+        this.segments = segments;
+    }
+
+    /**
+     * Join segments with ffmpeg concat demuxer without re-encoding.
+     *
+     * @param files
+     *            Segment files in order.
+     * @return True if ffmpeg succeeded.
+     * @throws InterruptedException
+     *             If interrupted while waiting for ffmpeg.
+     */
+    private boolean concatCopy(final List<File> files)
+            throws InterruptedException {
+        try {
+            final File list = File.createTempFile("segments", ".txt");
+            try {
+                try (PrintWriter writer = new PrintWriter(list, "UTF-8")) {
+                    for (File file : files) {
+                        writer.printf("file '%s'%n", file.getAbsolutePath()
+                                .replace("'", "'\\''"));
+                    }
+                }
+                final Process process = new ProcessBuilder("ffmpeg", "-y",
+                        "-loglevel", "error", "-f", "concat", "-safe", "0",
+                        "-i", list.getAbsolutePath(), "-c", "copy",
+                        outputFile).inheritIO().start();
+                return process.waitFor() == 0;
+            } finally {
+                if (!list.delete()) {
+                    list.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to run ffmpeg", e);
+            return false;
+        }
+    }
+
+    /**
+     * Join segments by decoding and encoding them again.
+     *
+     * @param files
+     *            Segment files in order.
+     * @return Frames written.
+     */
+    private int concatEncode(final List<File> files) {
+        final VideoCapture videoCapture = new VideoCapture(url);
+        final Size frameSize = new Size(
+                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+        final VideoWriter videoWriter = new VideoWriter(outputFile,
+                fourCC.toInt(), videoCapture.get(Videoio.CAP_PROP_FPS),
+                frameSize, true);
+        videoCapture.release();
+        int frames = 0;
+        try (MatPool pool = new MatPool()) {
+            final Mat mat = pool.acquire();
+            for (File file : files) {
+                final VideoCapture segment = new VideoCapture(file.getPath());
+                while (segment.read(mat)) {
+                    videoWriter.write(mat);
+                    frames++;
+                }
+                segment.release();
+            }
+        } finally {
+            videoWriter.release();
+        }
+        return frames;
+    }
+
+    /**
+     * Count frames in a file without decoding them.
+     *
+     * @param file
+     *            Video file.
+     * @return Frames grabbed.
+     */
+    private static int countFrames(final String file) {
+        final VideoCapture videoCapture = new VideoCapture(file);
+        int frames = 0;
+        try {
+            while (videoCapture.grab()) {
+                frames++;
+            }
+        } finally {
+            videoCapture.release();
+        }
+        return frames;
+    }
+
+    /**
+     * Split, encode segments in parallel and join them.
+     *
+     * @return Frames written.
+     * @throws IOException
+     *             If a segment fails, segments cannot be joined or the frames
+     *             read or joined differ from the source's frame count.
+     * @throws InterruptedException
+     *             If interrupted while waiting for segments.
+     */
+    public int transcode() throws IOException, InterruptedException {
+        final VideoCapture videoCapture = new VideoCapture(url);
+        final int frameCount = (int) videoCapture
+                .get(Videoio.CAP_PROP_FRAME_COUNT);
+        videoCapture.release();
+        if (frameCount <= 0) {
+            throw new IOException(String.format(
+                    "%s does not report a frame count", url));
+        }
+        // No point in segments with less than one frame
+        final int count = Math.min(segments, frameCount);
+        final File output = new File(outputFile).getAbsoluteFile();
+        final List<File> files = new ArrayList<File>();
+        final ExecutorService executor = Executors.newFixedThreadPool(count);
+        int frames = 0;
+        // Segment files are deleted even if a segment fails
+        try {
+            try {
+                final List<Future<Integer>> futures =
+                        new ArrayList<Future<Integer>>();
+                for (int i = 0; i < count; i++) {
+                    final int start = (int) ((long) frameCount * i / count);
+                    int end = (int) ((long) frameCount * (i + 1) / count);
+                    // Last segment reads to end, so extra frames are caught
+                    if (i == count - 1) {
+                        end = -1;
+                    }
+                    final File file = new File(output.getParentFile(), String
+                            .format("%s.part%d.avi", output.getName(), i));
+                    files.add(file);
+                    futures.add(executor.submit(new Segment(i, start, end,
+                            file)));
+                }
+                for (Future<Integer> future : futures) {
+                    frames += future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Segment failed", e.getCause());
+            } finally {
+                // No segment may still hold a file when it is deleted
+                executor.shutdownNow();
+                if (!executor.awaitTermination(SHUTDOWN_SECONDS,
+                        TimeUnit.SECONDS)) {
+                    logger.log(Level.WARNING, "Segments did not stop");
+                }
+            }
+            if (frames != frameCount) {
+                throw new IOException(String.format(
+                        "Source reports %d frames, segments read %d",
+                        frameCount, frames));
+            }
+            int joined = 0;
+            if (concatCopy(files)) {
+                joined = countFrames(outputFile);
+            } else {
+                logger.log(Level.WARNING,
+                        "ffmpeg concat failed, re-encoding segments");
+                joined = concatEncode(files);
+            }
+            if (joined != frameCount) {
+                throw new IOException(String.format(
+                        "Source reports %d frames, output has %d",
+                        frameCount, joined));
+            }
+        } finally {
+            for (File file : files) {
+                if (file.exists() && !file.delete()) {
+                    logger.log(Level.WARNING, String.format(
+                            "Unable to delete %s", file));
+                }
+            }
+        }
+        return frames;
+    }
+}
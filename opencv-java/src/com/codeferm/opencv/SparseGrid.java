@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 31, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Samples every step-th pixel of an image in each direction. Nearest neighbor
+ * resize only reads the sampled pixels, so sampling a frame and its background
+ * with the same step picks the same pixel positions from both at about 1 /
+ * step^2 of the cost of a full pass.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class SparseGrid {
+    /**
+     * Suppress default constructor for noninstantiability.
+     */
+    private SparseGrid() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Sample image.
+     *
+     * @param source
+     *            Image to sample.
+     * @param grid
+     *            Sampled pixels.
+     * @param step
+     *            Grid step in pixels.
+     */
+    public static void sample(final Mat source, final Mat grid,
+            final int step) {
+        Imgproc.resize(source, grid, new Size(
+                Math.ceil((double) source.cols() / step), Math.ceil(
+                        (double) source.rows() / step)), 0, 0,
+                Imgproc.INTER_NEAREST);
+    }
+}
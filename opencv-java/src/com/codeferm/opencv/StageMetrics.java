@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+/**
+ * Latency of one processing stage. The frame loop records into a
+ * {@link LatencyHistogram} and the reporter drains it once per interval into
+ * the snapshot exposed through {@link StageMetricsMXBean}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class StageMetrics implements StageMetricsMXBean {
+    /**
+     * Percentile for median.
+     */
+    private static final double P50 = 50.0;
+    /**
+     * Percentile for tail.
+     */
+    private static final double P99 = 99.0;
+    /**
+     * Stage name.
+     */
+    private final String name;
+    /**
+     * Live histogram.
+     */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    /**
+     * Drain target, only used by reporter.
+     */
+    private final long[] drained = new long[LatencyHistogram.buckets()];
+    /**
+     * Count in last interval.
+     */
+    private volatile long count;
+    /**
+     * Median in last interval.
+     */
+    private volatile long p50;
+    /**
+     * 99th percentile in last interval.
+     */
+    private volatile long p99;
+    /**
+     * Max in last interval.
+     */
+    private volatile long max;
+    /**
+     * Count since start.
+     */
+    private volatile long totalCount;
+
+    /**
+     * Create stage.
+     *
+     * @param name
+     *            Stage name.
+     */
+    StageMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record stage time.
+     *
+     * @param nanos
+     *            Nanoseconds spent in stage.
+     */
+    public void record(final long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Drain histogram into snapshot. Only called by reporter.
+     */
+    synchronized void snapshot() {
+        final long newMax = histogram.drainTo(drained);
+        final long newCount = LatencyHistogram.count(drained);
+        p50 = LatencyHistogram.percentile(drained, newCount, P50);
+        p99 = LatencyHistogram.percentile(drained, newCount, P99);
+        max = newMax;
+        count = newCount;
+        totalCount += newCount;
+    }
+
+    /**
+     * Stage name.
+     *
+     * @return Name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public long getP50() {
+        return p50;
+    }
+
+    @Override
+    public long getP99() {
+        return p99;
+    }
+
+    @Override
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public String toString() {
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        return String.format(
+                "%s: %d frames, p50 %4.2f ms, p99 %4.2f ms, max %4.2f ms",
+                name, count, p50 / 1000000.0, p99 / 1000000.0,
+                max / 1000000.0);
+        // CHECKSTYLE:ON MagicNumber
+    }
+}
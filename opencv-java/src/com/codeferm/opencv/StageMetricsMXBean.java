@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+/**
+ * JMX view of one processing stage. Values cover the last reporting interval.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface StageMetricsMXBean {
+    /**
+     * Frames timed in last interval.
+     *
+     * @return Frame count.
+     */
+    long getCount();
+
+    /**
+     * Median stage time in last interval.
+     *
+     * @return Nanoseconds.
+     */
+    long getP50();
+
+    /**
+     * 99th percentile stage time in last interval.
+     *
+     * @return Nanoseconds.
+     */
+    long getP99();
+
+    /**
+     * Largest stage time in last interval.
+     *
+     * @return Nanoseconds.
+     */
+    long getMax();
+
+    /**
+     * Frames timed since start.
+     *
+     * @return Frame count.
+     */
+    long getTotalCount();
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 30, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.video.BackgroundSubtractor;
+import org.opencv.video.Video;
+
+/**
+ * Background model backed by an OpenCV background subtractor. MOG2 keeps a
+ * mixture of Gaussians per pixel and KNN keeps recent samples per pixel, so
+ * both learn gradual lighting changes and repeating motion (trees, water) per
+ * pixel instead of needing a global reset. {@link #reset(Mat)} does nothing.
+ * Shadow detection is off, so the mask only has 0 and 255.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class SubtractorModel implements BackgroundModel {
+    /**
+     * Frames of history.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    public static final int HISTORY = 500;
+    /**
+     * MOG2 squared Mahalanobis distance threshold.
+     */
+    public static final double MOG2_THRESHOLD = 16.0;
+    /**
+     * KNN squared distance threshold.
+     */
+    public static final double KNN_THRESHOLD = 400.0;
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Learning rate that lets the subtractor pick one from history.
+     */
+    private static final double AUTO_RATE = -1.0;
+    /**
+     * Subtractor.
+     */
+    private final BackgroundSubtractor subtractor;
+    /**
+     * Mask from last estimate.
+     */
+    private final Mat mask = new Mat();
+
+    /**
+     * Create model around subtractor.
+     *
+     * @param subtractor
+     *            Subtractor with shadow detection off.
+     */
+    SubtractorModel(final BackgroundSubtractor subtractor) {
+        this.subtractor = subtractor;
+    }
+
+    /**
+     * Create MOG2 model with default history and threshold.
+     *
+     * @return Model.
+     */
+    public static SubtractorModel mog2() {
+        return new SubtractorModel(Video.createBackgroundSubtractorMOG2(
+                HISTORY, MOG2_THRESHOLD, false));
+    }
+
+    /**
+     * Create KNN model with default history and threshold.
+     *
+     * @return Model.
+     */
+    public static SubtractorModel knn() {
+        return new SubtractorModel(Video.createBackgroundSubtractorKNN(
+                HISTORY, KNN_THRESHOLD, false));
+    }
+
+    @Override
+    public void apply(final Mat frame, final Mat foreground) {
+        subtractor.apply(frame, foreground, AUTO_RATE);
+    }
+
+    /**
+     * Subtractors cannot update without classifying every pixel, so this
+     * builds the full mask and counts it exactly.
+     *
+     * @param frame
+     *            Blurred BGR or grayscale frame. Not modified.
+     * @param step
+     *            Ignored.
+     * @return Foreground percent.
+     */
+    @Override
+    public double estimate(final Mat frame, final int step) {
+        subtractor.apply(frame, mask, AUTO_RATE);
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        return 100.0 * Core.countNonZero(mask) / mask.total();
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    @Override
+    public void foreground(final Mat frame, final Mat foreground) {
+        mask.copyTo(foreground);
+    }
+
+    @Override
+    public void reset(final Mat frame) {
+        // Subtractor adapts per pixel
+    }
+
+    /**
+     * Free native memory.
+     */
+    @Override
+    public void release() {
+        subtractor.delete();
+        mask.release();
+        mask.delete();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Generates frames in memory: a flat background with solid boxes moving at
+ * fixed speeds and bouncing off the edges. Nothing is decoded, so processors
+ * can be measured without decode cost, and the boxes give motion detection
+ * something to find. Output is the same for every run.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class SyntheticSource implements FrameSource {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Background color.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final Scalar BACKGROUND = new Scalar(64, 64, 64);
+    /**
+     * Box colors.
+     */
+    private static final Scalar[] COLORS = {new Scalar(255, 255, 255),
+            new Scalar(0, 200, 255), new Scalar(255, 100, 0),
+            new Scalar(0, 255, 0) };
+    // CHECKSTYLE:ON MagicNumber
+    /**
+     * Frame size.
+     */
+    private final Size frameSize;
+    /**
+     * Frame rate to report.
+     */
+    private final double fps;
+    /**
+     * Frames to generate.
+     */
+    private final int count;
+    /**
+     * Box side in pixels.
+     */
+    private final int side;
+    /**
+     * Box positions and velocities (x, y, dx, dy per box).
+     */
+    private final int[] boxes;
+    /**
+     * Box top left.
+     */
+    private final Point point1 = new Point();
+    /**
+     * Box bottom right.
+     */
+    private final Point point2 = new Point();
+    /**
+     * Frames generated.
+     */
+    private int frames;
+
+    /**
+     * Create generator.
+     *
+     * @param frameSize
+     *            Frame size.
+     * @param fps
+     *            Frame rate to report.
+     * @param count
+     *            Frames to generate.
+     * @param objects
+     *            Number of moving boxes.
+     */
+    SyntheticSource(final Size frameSize, final double fps, final int count,
+            final int objects) {
+        this.frameSize = frameSize;
+        this.fps = fps;
+        this.count = count;
+        final int width = (int) frameSize.width;
+        final int height = (int) frameSize.height;
+        // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+        side = Math.max(1, Math.min(width, height) / 8);
+        boxes = new int[objects * 4];
+        for (int i = 0; i < objects; i++) {
+            // Spread boxes out and give each its own speed
+            boxes[i * 4] = (i * 2 * side) % Math.max(1, width - side);
+            boxes[i * 4 + 1] = (i * side) % Math.max(1, height - side);
+            boxes[i * 4 + 2] = 2 + i % 5;
+            boxes[i * 4 + 3] = 1 + i % 3;
+        }
+        // CHECKSTYLE:ON MagicNumber
+    }
+
+    /**
+     * Move one coordinate and bounce off edges.
+     *
+     * @param i
+     *            Position index, velocity is at i + 2.
+     * @param limit
+     *            Largest position.
+     */
+    private void move(final int i, final int limit) {
+        int position = boxes[i] + boxes[i + 2];
+        if (position < 0 || position > limit) {
+            boxes[i + 2] = -boxes[i + 2];
+            position = Math.max(0, Math.min(limit, position));
+        }
+        boxes[i] = position;
+    }
+
+    @Override
+    public boolean read(final Mat mat) {
+        if (frames >= count) {
+            return false;
+        }
+        mat.create((int) frameSize.height, (int) frameSize.width,
+                CvType.CV_8UC3);
+        mat.setTo(BACKGROUND);
+        for (int i = 0; i < boxes.length; i += 4) {
+            point1.x = boxes[i];
+            point1.y = boxes[i + 1];
+            point2.x = boxes[i] + side;
+            point2.y = boxes[i + 1] + side;
+            Imgproc.rectangle(mat, point1, point2, COLORS[i / 4
+                    % COLORS.length], -1);
+            move(i, (int) frameSize.width - side);
+            move(i + 1, (int) frameSize.height - side);
+        }
+        frames++;
+        return true;
+    }
+
+    @Override
+    public Size getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public double getFps() {
+        return fps;
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public void release() {
+        frames = count;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on February 16, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.HOGDescriptor;
+
+/**
+ * HOG people detector that splits the frame into a grid of overlapping tiles
+ * and runs detectMultiScale on each tile in a fork-join pool.
+ *
+ * Each tile is a core cell of the grid grown by a margin of half the largest
+ * window (HOG window times max scale) plus the HOG padding. A detection is
+ * kept only by the tile whose core contains its center, so every person up to
+ * max scale is seen whole by exactly one tile. Remaining duplicates along tile
+ * edges are merged with {@link NonMaxSuppression}. Results match the single
+ * call path except that grouping is done per tile, so boxes may shift by a
+ * few pixels and people larger than max scale are not found.
+ *
+ * The detector owns its fork-join pool and shuts it down on release. Tiles
+ * already run in parallel, so callers usually set OpenCV to one thread with
+ * Core.setNumThreads(1) to avoid oversubscribing cores. That setting is
+ * process wide, so it is left to the application.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class TiledHogDetector implements PeopleDetector {
+    /**
+     * Intersection over union above which edge duplicates are merged.
+     */
+    private static final double NMS_THRESHOLD = 0.5;
+    /**
+     * Fork-join pool running tiles, shut down on release.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Tile columns.
+     */
+    private final int cols;
+    /**
+     * Tile rows.
+     */
+    private final int rows;
+    /**
+     * Window stride.
+     */
+    private final Size winStride;
+    /**
+     * Padding.
+     */
+    private final Size padding;
+    /**
+     * Pyramid scale.
+     */
+    private final double scale;
+    /**
+     * Horizontal tile margin.
+     */
+    private final int marginX;
+    /**
+     * Vertical tile margin.
+     */
+    private final int marginY;
+    /**
+     * Every worker created so native memory can be released.
+     */
+    private final ConcurrentLinkedQueue<TileWorker> workers =
+            new ConcurrentLinkedQueue<TileWorker>();
+    /**
+     * One worker per pool thread, since HOGDescriptor is not shared.
+     */
+    private final ThreadLocal<TileWorker> worker =
+            new ThreadLocal<TileWorker>() {
+                @Override
+                protected TileWorker initialValue() {
+                    final TileWorker tileWorker = new TileWorker();
+                    workers.add(tileWorker);
+                    return tileWorker;
+                }
+            };
+
+    /**
+     * Per-thread HOG descriptor and result Mats.
+     */
+    private static final class TileWorker {
+        /**
+         * HOG descriptor.
+         */
+        private final HOGDescriptor hog = new HOGDescriptor();
+        /**
+         * SVM coefficients.
+         */
+        private final MatOfFloat descriptors = HOGDescriptor
+                .getDefaultPeopleDetector();
+        /**
+         * Tile locations.
+         */
+        private final MatOfRect locations = new MatOfRect();
+        /**
+         * Tile weights.
+         */
+        private final MatOfDouble weights = new MatOfDouble();
+
+        /**
+         * Set SVM detector.
+         */
+        TileWorker() {
+            hog.setSVMDetector(descriptors);
+        }
+
+        /**
+         * Free native memory.
+         */
+        void release() {
+            locations.release();
+            locations.delete();
+            weights.release();
+            weights.delete();
+            descriptors.release();
+            descriptors.delete();
+            hog.delete();
+        }
+    }
+
+    /**
+     * Detect people in one tile.
+     */
+    private final class TileTask extends RecursiveAction {
+        /**
+         * Serializable class version number.
+         */
+        private static final long serialVersionUID = 2894567470384017224L;
+        /**
+         * Whole frame.
+         */
+        private final transient Mat frame;
+        /**
+         * Detections centered here belong to this tile.
+         */
+        private final transient Rect core;
+        /**
+         * Area actually searched.
+         */
+        private final transient Rect tile;
+        /**
+         * Detections in frame coordinates.
+         */
+        private final transient List<Rect> rects = new ArrayList<Rect>();
+        /**
+         * Detection weights.
+         */
+        private final transient List<Double> weights =
+                new ArrayList<Double>();
+
+        /**
+         * Create task.
+         *
+         * @param frame
+         *            Whole frame.
+         * @param core
+         *            Core cell.
+         * @param tile
+         *            Core cell plus margin.
+         */
+        TileTask(final Mat frame, final Rect core, final Rect tile) {
+            this.frame = frame;
+            this.core = core;
+            this.tile = tile;
+        }
+
+        @Override
+        protected void compute() {
+            final TileWorker tileWorker = worker.get();
+            final Mat roi = frame.submat(tile);
+            tileWorker.hog.detectMultiScale(roi, tileWorker.locations,
+                    tileWorker.weights, 0.0, winStride, padding, scale,
+                    HogDetector.FINAL_THRESHOLD, false);
+            roi.release();
+            roi.delete();
+            if (tileWorker.locations.rows() > 0) {
+                final Rect[] found = tileWorker.locations.toArray();
+                final double[] foundWeights = tileWorker.weights.toArray();
+                for (int i = 0; i < found.length; i++) {
+                    final Rect rect = found[i];
+                    // Translate to frame coordinates
+                    rect.x += tile.x;
+                    rect.y += tile.y;
+                    final int centerX = rect.x + rect.width / 2;
+                    final int centerY = rect.y + rect.height / 2;
+                    if (centerX >= core.x && centerX < core.x + core.width
+                            && centerY >= core.y
+                            && centerY < core.y + core.height) {
+                        rects.add(rect);
+                        weights.add(foundWeights[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create detector using default people detector.
+     *
+     * @param pool
+     *            Fork-join pool running tiles. Owned by the detector.
+     * @param cols
+     *            Tile columns.
+     * @param rows
+     *            Tile rows.
+     * @param winStride
+     *            Window stride.
+     * @param padding
+     *            Padding.
+     * @param scale
+     *            Pyramid scale.
+     * @param maxScale
+     *            Largest pyramid scale guaranteed to be found whole in a tile.
+     */
+    TiledHogDetector(final ForkJoinPool pool, final int cols, final int rows,
+            final Size winStride, final Size padding, final double scale,
+            final double maxScale) {
+        if (cols < 1 || rows < 1) {
+            throw new IllegalArgumentException(
+                    "Tile columns and rows must be greater than zero");
+        }
+        this.pool = pool;
+        this.cols = cols;
+        this.rows = rows;
+        this.winStride = winStride;
+        this.padding = padding;
+        this.scale = scale;
+        final HOGDescriptor hog = new HOGDescriptor();
+        final Size winSize = hog.get_winSize();
+        hog.delete();
+        marginX = (int) Math.ceil(winSize.width * maxScale / 2)
+                + (int) padding.width;
+        marginY = (int) Math.ceil(winSize.height * maxScale / 2)
+                + (int) padding.height;
+    }
+
+    /**
+     * Create detector with a grid sized to pool parallelism and default
+     * parameters.
+     *
+     * @param pool
+     *            Fork-join pool running tiles. Owned by the detector.
+     * @param maxScale
+     *            Largest pyramid scale guaranteed to be found whole in a tile.
+     */
+    TiledHogDetector(final ForkJoinPool pool, final double maxScale) {
+        this(pool, (int) Math.ceil(Math.sqrt(pool.getParallelism())),
+                (int) Math.ceil((double) pool.getParallelism()
+                        / Math.ceil(Math.sqrt(pool.getParallelism()))),
+                HogDetector.WIN_STRIDE, HogDetector.PADDING, HogDetector.SCALE,
+                maxScale);
+    }
+
+    @Override
+    public void detect(final Mat mat, final MatOfRect foundLocations,
+            final MatOfDouble foundWeights) {
+        final int width = mat.width();
+        final int height = mat.height();
+        final int coreWidth = (width + cols - 1) / cols;
+        final int coreHeight = (height + rows - 1) / rows;
+        final List<TileTask> tasks = new ArrayList<TileTask>(cols * rows);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                final int x = col * coreWidth;
+                final int y = row * coreHeight;
+                final Rect core = new Rect(x, y, Math.min(coreWidth, width
+                        - x), Math.min(coreHeight, height - y));
+                final int x1 = Math.max(0, x - marginX);
+                final int y1 = Math.max(0, y - marginY);
+                final int x2 = Math.min(width, core.x + core.width + marginX);
+                final int y2 = Math.min(height, core.y + core.height + marginY);
+                tasks.add(new TileTask(mat, core, new Rect(x1, y1, x2 - x1, y2
+                        - y1)));
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = -6061946421565133208L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        final List<Rect> rects = new ArrayList<Rect>();
+        final List<Double> weights = new ArrayList<Double>();
+        for (TileTask task : tasks) {
+            rects.addAll(task.rects);
+            weights.addAll(task.weights);
+        }
+        final List<Rect> keptRects = new ArrayList<Rect>(rects.size());
+        final List<Double> keptWeights = new ArrayList<Double>(rects.size());
+        NonMaxSuppression.apply(rects, weights, NMS_THRESHOLD, keptRects,
+                keptWeights);
+        foundLocations.fromList(keptRects);
+        foundWeights.fromList(keptWeights);
+    }
+
+    /**
+     * Shut down pool and free native memory of every worker.
+     */
+    @Override
+    public void release() {
+        pool.shutdown();
+        TileWorker tileWorker = workers.poll();
+        while (tileWorker != null) {
+            tileWorker.release();
+            tileWorker = workers.poll();
+        }
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 27, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Lightweight multi-object tracker for detector output. Every track keeps a
+ * stable ID and a constant velocity alpha-beta filter (a fixed gain Kalman
+ * filter) on its center, so tracks can be predicted forward on frames where
+ * the detector does not run. Detections are associated to predicted tracks
+ * greedily by intersection over union.
+ *
+ * A track is confirmed after minHits detections, which keeps single frame
+ * false positives from getting an ID, and is dropped after maxMisses frames
+ * without a matching detection. Callers that detect every nth frame must
+ * allow more than n misses, or tracks are dropped between detections. Dwell
+ * time and path are kept per track, so callers can count people or objects
+ * per ID instead of per frame.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class Tracker {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Default minimum intersection over union to associate.
+     */
+    public static final double IOU_THRESHOLD = 0.3;
+    /**
+     * Default frames without detection before a track is dropped.
+     */
+    public static final int MAX_MISSES = 30;
+    /**
+     * Default detections needed to confirm a track.
+     */
+    public static final int MIN_HITS = 3;
+    /**
+     * Position gain.
+     */
+    // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+    private static final double ALPHA = 0.6;
+    /**
+     * Velocity gain.
+     */
+    private static final double BETA = 0.2;
+    /**
+     * Size smoothing.
+     */
+    private static final double SIZE_GAIN = 0.3;
+    /**
+     * Path points kept per track.
+     */
+    private static final int PATH_LENGTH = 64;
+    /**
+     * Rectangle color.
+     */
+    private static final Scalar RECT_COLOR = new Scalar(0, 255, 0);
+    /**
+     * Path color.
+     */
+    private static final Scalar PATH_COLOR = new Scalar(0, 255, 255);
+    /**
+     * Font color.
+     */
+    private static final Scalar FONT_COLOR = new Scalar(255, 255, 255);
+    // CHECKSTYLE:ON MagicNumber
+
+    /**
+     * One tracked object.
+     */
+    static final class Track {
+        /**
+         * Stable ID.
+         */
+        private final int id;
+        /**
+         * Frame track was created.
+         */
+        private final long firstFrame;
+        /**
+         * Detected center points, oldest first.
+         */
+        private final List<Point> path = new ArrayList<Point>();
+        /**
+         * Center x.
+         */
+        private double x;
+        /**
+         * Center y.
+         */
+        private double y;
+        /**
+         * Width.
+         */
+        private double width;
+        /**
+         * Height.
+         */
+        private double height;
+        /**
+         * X velocity per frame.
+         */
+        private double vx;
+        /**
+         * Y velocity per frame.
+         */
+        private double vy;
+        /**
+         * Weight of last matching detection.
+         */
+        private double weight;
+        /**
+         * Last frame with a matching detection.
+         */
+        private long lastFrame;
+        /**
+         * Matching detections.
+         */
+        private int hits;
+        /**
+         * Frames since last matching detection.
+         */
+        private long misses;
+
+        /**
+         * Create track from first detection.
+         *
+         * @param id
+         *            Stable ID.
+         * @param frame
+         *            Current frame.
+         * @param rect
+         *            Detection.
+         * @param weight
+         *            Detection weight.
+         */
+        Track(final int id, final long frame, final Rect rect,
+                final double weight) {
+            this.id = id;
+            this.firstFrame = frame;
+            this.lastFrame = frame;
+            this.weight = weight;
+            x = rect.x + rect.width / 2.0;
+            y = rect.y + rect.height / 2.0;
+            width = rect.width;
+            height = rect.height;
+            hits = 1;
+            addPoint();
+        }
+
+        /**
+         * Append center to path, dropping oldest point when full.
+         */
+        private void addPoint() {
+            if (path.size() == PATH_LENGTH) {
+                path.remove(0);
+            }
+            path.add(new Point(x, y));
+        }
+
+        /**
+         * Advance by velocity.
+         *
+         * @param frames
+         *            Frames to advance.
+         */
+        void predict(final long frames) {
+            x += vx * frames;
+            y += vy * frames;
+            misses += frames;
+        }
+
+        /**
+         * Correct predicted state with matching detection.
+         *
+         * @param frame
+         *            Current frame.
+         * @param rect
+         *            Detection.
+         * @param detectionWeight
+         *            Detection weight.
+         * @param elapsed
+         *            Frames since last matching detection.
+         */
+        void correct(final long frame, final Rect rect,
+                final double detectionWeight, final long elapsed) {
+            final double rx = rect.x + rect.width / 2.0 - x;
+            final double ry = rect.y + rect.height / 2.0 - y;
+            x += ALPHA * rx;
+            y += ALPHA * ry;
+            vx += BETA * rx / Math.max(1, elapsed);
+            vy += BETA * ry / Math.max(1, elapsed);
+            width += SIZE_GAIN * (rect.width - width);
+            height += SIZE_GAIN * (rect.height - height);
+            weight = detectionWeight;
+            lastFrame = frame;
+            hits++;
+            misses = 0;
+            addPoint();
+        }
+
+        /**
+         * Stable ID.
+         *
+         * @return ID.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Current estimated rectangle.
+         *
+         * @return Rectangle.
+         */
+        public Rect getRect() {
+            return new Rect((int) Math.round(x - width / 2), (int) Math
+                    .round(y - height / 2), (int) Math.round(width),
+                    (int) Math.round(height));
+        }
+
+        /**
+         * Weight of last matching detection.
+         *
+         * @return Weight.
+         */
+        public double getWeight() {
+            return weight;
+        }
+
+        /**
+         * Frame track was created.
+         *
+         * @return Frame number.
+         */
+        public long getFirstFrame() {
+            return firstFrame;
+        }
+
+        /**
+         * Last frame with a matching detection.
+         *
+         * @return Frame number.
+         */
+        public long getLastFrame() {
+            return lastFrame;
+        }
+
+        /**
+         * Frames from first to last matching detection.
+         *
+         * @return Dwell in frames.
+         */
+        public long getDwell() {
+            return lastFrame - firstFrame + 1;
+        }
+
+        /**
+         * Recent detected center points, oldest first.
+         *
+         * @return Path.
+         */
+        public List<Point> getPath() {
+            return Collections.unmodifiableList(path);
+        }
+
+        /**
+         * Matching detections.
+         *
+         * @return Hit count.
+         */
+        public int getHits() {
+            return hits;
+        }
+    }
+
+    /**
+     * Minimum intersection over union to associate.
+     */
+    private final double iouThreshold;
+    /**
+     * Frames without detection before a track is dropped.
+     */
+    private final int maxMisses;
+    /**
+     * Detections needed to confirm a track.
+     */
+    private final int minHits;
+    /**
+     * Live tracks.
+     */
+    private final List<Track> tracks = new ArrayList<Track>();
+    /**
+     * Confirmed live tracks.
+     */
+    private final List<Track> confirmed = new ArrayList<Track>();
+    /**
+     * Predicted rectangles of live tracks.
+     */
+    private final List<Rect> predicted = new ArrayList<Rect>();
+    /**
+     * Track matched by each detection or null.
+     */
+    private Track[] matches = new Track[0];
+    /**
+     * Line start.
+     */
+    private final Point point1 = new Point();
+    /**
+     * Line end.
+     */
+    private final Point point2 = new Point();
+    /**
+     * Current frame.
+     */
+    private long frame;
+    /**
+     * Next ID.
+     */
+    private int nextId = 1;
+    /**
+     * Tracks confirmed so far.
+     */
+    private int confirmedCount;
+    /**
+     * Dwell frames of dropped confirmed tracks.
+     */
+    private long totalDwell;
+    /**
+     * Dropped confirmed tracks.
+     */
+    private int dropped;
+
+    /**
+     * Create tracker with default parameters.
+     */
+    Tracker() {
+        this(IOU_THRESHOLD, MAX_MISSES, MIN_HITS);
+    }
+
+    /**
+     * Create tracker.
+     *
+     * @param iouThreshold
+     *            Minimum intersection over union to associate.
+     * @param maxMisses
+     *            Frames without detection before a track is dropped. Must be
+     *            larger than the detection interval.
+     * @param minHits
+     *            Detections needed to confirm a track.
+     */
+    Tracker(final double iouThreshold, final int maxMisses, final int minHits) {
+        this.iouThreshold = iouThreshold;
+        this.maxMisses = maxMisses;
+        this.minHits = minHits;
+    }
+
+    /**
+     * Advance all tracks to a frame.
+     *
+     * @param newFrame
+     *            Frame number, which may skip dropped frames.
+     */
+    private void advance(final long newFrame) {
+        final long frames = Math.max(1, newFrame - frame);
+        frame = newFrame;
+        for (Track track : tracks) {
+            track.predict(frames);
+        }
+    }
+
+    /**
+     * Advance all tracks one frame without detections.
+     */
+    public void predict() {
+        predict(frame + 1);
+    }
+
+    /**
+     * Advance all tracks to a frame without detections.
+     *
+     * @param newFrame
+     *            Frame number, which may skip dropped frames.
+     */
+    public void predict(final long newFrame) {
+        advance(newFrame);
+        prune();
+    }
+
+    /**
+     * Advance all tracks one frame and correct them with detections from
+     * that frame.
+     *
+     * @param rects
+     *            Detections.
+     * @param weights
+     *            Weight of each detection or null.
+     */
+    public void update(final Rect[] rects, final double[] weights) {
+        update(frame + 1, rects, weights);
+    }
+
+    /**
+     * Advance all tracks to a frame and correct them with detections from
+     * that frame. Unmatched detections start new tracks.
+     *
+     * @param newFrame
+     *            Frame number, which may skip dropped frames.
+     * @param rects
+     *            Detections.
+     * @param weights
+     *            Weight of each detection or null.
+     */
+    public void update(final long newFrame, final Rect[] rects,
+            final double[] weights) {
+        advance(newFrame);
+        predicted.clear();
+        for (Track track : tracks) {
+            predicted.add(track.getRect());
+        }
+        if (matches.length < rects.length) {
+            matches = new Track[rects.length];
+        }
+        Arrays.fill(matches, 0, rects.length, null);
+        associate(rects);
+        for (int i = 0; i < rects.length; i++) {
+            double weight = 0.0;
+            if (weights != null) {
+                weight = weights[i];
+            }
+            if (matches[i] == null) {
+                tracks.add(new Track(nextId++, frame, rects[i], weight));
+                if (minHits <= 1) {
+                    confirmedCount++;
+                }
+            } else {
+                matches[i].correct(frame, rects[i], weight, frame
+                        - matches[i].lastFrame);
+                if (matches[i].hits == minHits) {
+                    confirmedCount++;
+                }
+            }
+        }
+        prune();
+    }
+
+    /**
+     * Greedy association: repeatedly pair the unmatched track and detection
+     * with the highest intersection over union above threshold.
+     *
+     * @param rects
+     *            Detections.
+     */
+    private void associate(final Rect[] rects) {
+        final boolean[] used = new boolean[tracks.size()];
+        while (true) {
+            double best = iouThreshold;
+            int bestTrack = -1;
+            int bestRect = -1;
+            for (int t = 0; t < used.length; t++) {
+                if (used[t]) {
+                    continue;
+                }
+                for (int r = 0; r < rects.length; r++) {
+                    if (matches[r] != null) {
+                        continue;
+                    }
+                    final double iou = NonMaxSuppression.iou(predicted
+                            .get(t), rects[r]);
+                    if (iou >= best) {
+                        best = iou;
+                        bestTrack = t;
+                        bestRect = r;
+                    }
+                }
+            }
+            if (bestTrack < 0) {
+                break;
+            }
+            used[bestTrack] = true;
+            matches[bestRect] = tracks.get(bestTrack);
+        }
+    }
+
+    /**
+     * Drop tracks that have not matched for maxMisses frames.
+     */
+    private void prune() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            final Track track = tracks.get(i);
+            if (track.misses > maxMisses) {
+                if (track.hits >= minHits) {
+                    totalDwell += track.getDwell();
+                    dropped++;
+                }
+                tracks.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Confirmed live tracks. The list is reused by the next call.
+     *
+     * @return Tracks.
+     */
+    public List<Track> getTracks() {
+        confirmed.clear();
+        for (Track track : tracks) {
+            if (track.hits >= minHits) {
+                confirmed.add(track);
+            }
+        }
+        return confirmed;
+    }
+
+    /**
+     * Frames without detection before a track is dropped.
+     *
+     * @return Frame count.
+     */
+    public int getMaxMisses() {
+        return maxMisses;
+    }
+
+    /**
+     * Number of distinct objects confirmed since creation.
+     *
+     * @return Track count.
+     */
+    public int getCount() {
+        return confirmedCount;
+    }
+
+    /**
+     * Average dwell of confirmed tracks, including live ones.
+     *
+     * @return Dwell in frames.
+     */
+    public double getAverageDwell() {
+        long dwell = totalDwell;
+        int count = dropped;
+        for (Track track : getTracks()) {
+            dwell += track.getDwell();
+            count++;
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        return (double) dwell / count;
+    }
+
+    /**
+     * Draw rectangle, ID and path of each confirmed track.
+     *
+     * @param mat
+     *            Frame to draw on.
+     */
+    public void draw(final Mat mat) {
+        for (Track track : getTracks()) {
+            final Rect rect = track.getRect();
+            point1.x = rect.x;
+            point1.y = rect.y;
+            point2.x = rect.x + rect.width;
+            point2.y = rect.y + rect.height;
+            Imgproc.rectangle(mat, point1, point2, RECT_COLOR, 2);
+            final List<Point> path = track.path;
+            for (int i = 1; i < path.size(); i++) {
+                Imgproc.line(mat, path.get(i - 1), path.get(i), PATH_COLOR,
+                        1);
+            }
+            point1.x = rect.x;
+            // CHECKSTYLE:OFF MagicNumber - Magic numbers here for illustration
+            point1.y = rect.y - 4;
+            Imgproc.putText(mat, String.format("%d", track.getId()), point1,
+                    Core.FONT_HERSHEY_PLAIN, 1.5, FONT_COLOR, 2);
+            // CHECKSTYLE:ON MagicNumber
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+/**
+ * Encodes frames to a video file through VideoWriter.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class VideoSink implements FrameSink {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Destination of frames.
+     */
+    private final VideoWriter videoWriter;
+
+    /**
+     * Open video file for writing.
+     *
+     * @param outputFile
+     *            Output file.
+     * @param fourCC
+     *            Codec.
+     * @param fps
+     *            Frame rate.
+     * @param frameSize
+     *            Frame size.
+     */
+    VideoSink(final String outputFile, final FourCC fourCC, final double fps,
+            final Size frameSize) {
+        videoWriter = new VideoWriter(outputFile, fourCC.toInt(), fps,
+                frameSize, true);
+    }
+
+    @Override
+    public void write(final Mat mat) {
+        videoWriter.write(mat);
+    }
+
+    @Override
+    public void release() {
+        videoWriter.release();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on March 25, 2015
+ * sgoldsmith@codeferm.com
+ */
+package com.codeferm.opencv;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Frames from a video file, stream URL or camera index through VideoCapture.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class VideoSource implements FrameSource {
+    /* Load the OpenCV system library */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
+    }
+    /**
+     * Source of frames.
+     */
+    private final VideoCapture videoCapture;
+    /**
+     * Frame size.
+     */
+    private final Size frameSize;
+    /**
+     * Reported frame rate.
+     */
+    private final double fps;
+    /**
+     * Source is a camera.
+     */
+    private final boolean live;
+
+    /**
+     * Open file, stream URL or camera index.
+     *
+     * @param url
+     *            File, URL or camera index.
+     */
+    VideoSource(final String url) {
+        // See if URL is an integer: -? = negative sign, could have none or
+        // one, \\d+ = one or more digits
+        live = url.matches("-?\\d+");
+        if (live) {
+            videoCapture = new VideoCapture(Integer.parseInt(url));
+        } else {
+            videoCapture = new VideoCapture(url);
+        }
+        frameSize = new Size(
+                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
+        fps = Math.max(0, videoCapture.get(Videoio.CAP_PROP_FPS));
+    }
+
+    @Override
+    public boolean read(final Mat mat) {
+        return videoCapture.read(mat);
+    }
+
+    @Override
+    public Size getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public double getFps() {
+        return fps;
+    }
+
+    @Override
+    public boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Underlying capture for property access.
+     *
+     * @return Video capture.
+     */
+    public VideoCapture getVideoCapture() {
+        return videoCapture;
+    }
+
+    @Override
+    public void release() {
+        videoCapture.release();
+    }
+}
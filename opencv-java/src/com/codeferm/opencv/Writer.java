@@ -13,22 +13,21 @@ import java.util.logging.Logger;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.VideoWriter;
-import org.opencv.videoio.Videoio;
 
 /**
  * Example of VideoWriter class.
  *
- * args[0] = source file or will default to "../resources/traffic.mp4" if no
- * args passed.
+ * args[0] = source (see {@link FrameIO}) or will default to
+ * "../resources/traffic.mp4" if no args passed.
  *
  * The following codecs were tested using Gstreamer OpenCV backend (FourCC
  * value):
  *
  * Codec DIVX (avi), XVID (avi)
  *
+ * -Dsegments=n splits a seekable file into n frame ranges that are encoded in
+ * parallel and joined with ffmpeg (see {@link SegmentedTranscoder}).
+ *
  * @author sgoldsmith
  * @version 1.0.0
  * @since 1.0.0
@@ -45,6 +44,10 @@ final class Writer {
     static {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME); // NOPMD
     }
+    /**
+     * Output codec.
+     */
+    private static final String FOURCC = "XVID";
 
     /**
      * Suppress default constructor for noninstantiability.
@@ -53,6 +56,35 @@ final class Writer {
         throw new AssertionError();
     }
 
+    /**
+     * Copy frames on the calling thread.
+     *
+     * @param source
+     *            Source of frames.
+     * @param sink
+     *            Destination of frames.
+     * @return Frames written.
+     */
+    private static int copy(final FrameSource source, final FrameSink sink) {
+        int frames = 0;
+        final Metrics metrics = new Metrics("Writer");
+        // Pool releases native memory even if the loop throws
+        try (MatPool pool = new MatPool()) {
+            final Mat mat = pool.acquire();
+            metrics.start();
+            long time = System.nanoTime();
+            while (source.read(mat)) {
+                time = metrics.record(Metrics.Stage.READ, time);
+                sink.write(mat);
+                time = metrics.record(Metrics.Stage.WRITE, time);
+                frames++;
+            }
+            metrics.reportMemory("frame loop", pool);
+            metrics.stop();
+        }
+        return frames;
+    }
+
     /**
      * Main method.
      *
@@ -64,7 +96,8 @@ final class Writer {
      */
     public static void main(final String[] args) {
         String url = null;
-        final String outputFile = "../output/writer-java.avi";
+        final String outputFile = FrameIO
+                .outputFile("../output/writer-java.avi");
         // Check how many arguments were passed in
         if (args.length == 0) {
             // If no arguments were passed then default to
@@ -84,20 +117,37 @@ final class Writer {
         logger.log(Level.INFO, String.format("OpenCV %s", Core.VERSION));
         logger.log(Level.INFO, String.format("Input file: %s", url));
         logger.log(Level.INFO, String.format("Output file: %s", outputFile));
-        VideoCapture videoCapture = new VideoCapture(url);
-        final Size frameSize = new Size(
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_WIDTH),
-                (int) videoCapture.get(Videoio.CAP_PROP_FRAME_HEIGHT));
-        logger.log(Level.INFO, String.format("Resolution: %s", frameSize));
-        final FourCC fourCC = new FourCC("XVID");
-        VideoWriter videoWriter = new VideoWriter(outputFile, fourCC.toInt(),
-                videoCapture.get(Videoio.CAP_PROP_FPS), frameSize, true);
-        final Mat mat = new Mat();
+        final FrameSource source = FrameIO.source(url);
+        logger.log(Level.INFO, String.format("Resolution: %s",
+                source.getFrameSize()));
+        final String fourCC = System.getProperty("fourcc", FOURCC);
+        final int segments = Integer.getInteger("segments", 1);
         int frames = 0;
         final long startTime = System.currentTimeMillis();
-        while (videoCapture.read(mat)) {
-            videoWriter.write(mat);
-            frames++;
+        // Only files can be split by frame number
+        if (segments > 1 && source instanceof VideoSource
+                && !source.isLive()) {
+            source.release();
+            logger.log(Level.INFO, String.format("Segments: %d", segments));
+            try {
+                frames = new SegmentedTranscoder(url, outputFile, new FourCC(
+                        fourCC), segments).transcode();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Segmented transcode failed", e);
+            } catch (InterruptedException e) {
+                logger.log(Level.SEVERE, "Segmented transcode interrupted", e);
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            // Encoding is the point here, so analytics mode does not apply
+            final FrameSink sink = new VideoSink(outputFile, new FourCC(
+                    fourCC), FrameIO.fps(source), source.getFrameSize());
+            try {
+                frames = copy(source, sink);
+            } finally {
+                source.release();
+                sink.release();
+            }
         }
         final long estimatedTime = System.currentTimeMillis() - startTime;
         logger.log(Level.INFO, String.format("%d frames", frames));